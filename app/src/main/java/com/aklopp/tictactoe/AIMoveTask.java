@@ -0,0 +1,81 @@
+package com.aklopp.tictactoe;
+
+import android.os.AsyncTask;
+
+/**
+ * Runs a game AI search on a background thread and delivers the chosen move on the UI thread.
+ * Tasks run one at a time on AsyncTask's serial executor, so the game AI is never searching
+ * two positions at once. A cancelled task never delivers its move, and its search stops even
+ * if it only starts after the cancel.
+ */
+public class AIMoveTask extends AsyncTask<Position, Void, Integer>
+{
+    /**
+     * The AI searching for the move.
+     */
+    private final GameAI mGameAI;
+
+    /**
+     * Limits on the search.
+     */
+    private final SearchBudget mBudget;
+
+    /**
+     * Taken when the task is created, so cancelSearch stops this task's search whenever it
+     * starts, while tasks created after the cancel search normally.
+     */
+    private final int mStopToken;
+
+    /**
+     * The listener receiving the move.
+     */
+    private final OnMoveFoundListener mOnMoveFoundListener;
+
+    /**
+     * Constructor
+     *
+     * @param gameAI
+     * @param budget   limits on the search
+     * @param listener
+     */
+    public AIMoveTask(GameAI gameAI, SearchBudget budget, OnMoveFoundListener listener)
+    {
+        this.mGameAI = gameAI;
+        this.mBudget = budget;
+        this.mOnMoveFoundListener = listener;
+        this.mStopToken = gameAI.getStopToken();
+    }
+
+    @Override
+    protected Integer doInBackground(Position... positions)
+    {
+        return mGameAI.makeMove(positions[0], mBudget, mStopToken);
+    }
+
+    @Override
+    protected void onPostExecute(Integer move)
+    {
+        mOnMoveFoundListener.onMoveFound(move);
+    }
+
+    /**
+     * Cancel the task, stopping the search if it has already started.
+     */
+    public void cancelSearch()
+    {
+        cancel(false);
+        mGameAI.stop();
+    }
+
+    /**
+     * Interface to listen for the move found by the AI.
+     */
+    public interface OnMoveFoundListener
+    {
+
+        /**
+         * Called on the UI thread once the AI has chosen a move.
+         */
+        void onMoveFound(int move);
+    }
+}
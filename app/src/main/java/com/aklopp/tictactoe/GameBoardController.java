@@ -0,0 +1,550 @@
+package com.aklopp.tictactoe;
+
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs a game between the user and the game AI on a board view.
+ * Created by Allison on 6/5/2015.
+ */
+public class GameBoardController
+{
+    /**
+     * Tag for log messages.
+     */
+    private static final String LOG_TAG = GameBoardController.class.getSimpleName();
+
+    /**
+     * The longest the AI may think about a move, so it stays responsive on slow phones and
+     * large boards.
+     */
+    private static final SearchBudget AI_MOVE_BUDGET = SearchBudget.ofMillis(50);
+
+    /**
+     * Most AI moves remembered for replaying, the cache is emptied once it is full.
+     */
+    private static final int MAX_KNOWN_AI_MOVES = 1024;
+
+    private final BoardGeometry mGeometry;
+    private final GameBoardView mBoardView;
+    private Player mUserPlayer;
+    private GameAI mGameAI;
+
+    /**
+     * The position on the board.
+     */
+    private Position mPosition;
+
+    /**
+     * The position after each move of the game, from the empty board at index 0. Positions are
+     * immutable, so stepping through the history only moves mMoveCount.
+     */
+    private final Position[] mPositions;
+
+    /**
+     * The number of moves in the history, more than mMoveCount once moves have been undone.
+     */
+    private int mHistoryLength;
+
+    /**
+     * The moves the AI chose in positions it has searched, so it answers at once when the
+     * user comes back to one.
+     */
+    private final Map<Position, Integer> mKnownAIMoves = new HashMap<>();
+
+    private OnGameOverListener mOnGameOverListener;
+    private OnThinkingChangeListener mOnThinkingChangeListener;
+    private OnHistoryChangeListener mOnHistoryChangeListener;
+    private boolean mIsGameInProgress = false;
+
+    /**
+     * True once the game has ended, so its outcome is reported only once.
+     */
+    private boolean mIsGameOver;
+
+    /**
+     * The outcome waiting to be reported with the next board update, null if none.
+     */
+    private Outcome mPendingOutcome;
+
+    /**
+     * True while a board update is posted for the next frame.
+     */
+    private boolean mIsBoardUpdateScheduled;
+
+    /**
+     * Applies the changes made since the last frame to the board view in one go.
+     */
+    private final Runnable mBoardUpdate = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            applyBoardUpdate();
+        }
+    };
+
+    /**
+     * The AI search in progress, null when it is the user's turn.
+     */
+    private AIMoveTask mAIMoveTask;
+
+    /**
+     * The cells played in this game, in order.
+     */
+    private final int[] mMoves;
+    private int mMoveCount;
+
+    /**
+     * Constructor for the 3 x 3 board.
+     *
+     * @param boardView
+     * @param userPlayer
+     */
+    public GameBoardController(GameBoardView boardView, Player userPlayer)
+    {
+        this(boardView, userPlayer, BoardGeometry.STANDARD);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param boardView
+     * @param userPlayer
+     * @param geometry   the board to play on
+     */
+    public GameBoardController(GameBoardView boardView, Player userPlayer, BoardGeometry geometry)
+    {
+        mGeometry = geometry;
+        mBoardView = boardView;
+        mGameAI = new GameAI(geometry);
+        mMoves = new int[geometry.getCellCount()];
+        mPositions = new Position[geometry.getCellCount() + 1];
+
+        mBoardView.setOnCellClickListener(new GameBoardView.OnCellClickListener()
+        {
+            @Override
+            public void onCellClick(int cell)
+            {
+                placeUserMove(cell);
+            }
+        });
+
+        setUserPlayer(userPlayer);
+    }
+
+    /**
+     * Place the user's marker on a blank cell, then let the AI answer.
+     *
+     * @param cell
+     */
+    private void placeUserMove(int cell)
+    {
+        if (null != mAIMoveTask || mIsGameOver || null != mPosition.getPlayerAt(cell))
+            return;
+
+        playMove(cell);
+        makeAIMoveOnBoard();
+    }
+
+    /**
+     * Play a move and make it the last one in the history, dropping any undone moves.
+     *
+     * @param cell
+     */
+    private void playMove(int cell)
+    {
+        mPosition = mPosition.play(cell);
+        mMoves[mMoveCount++] = cell;
+        mPositions[mMoveCount] = mPosition;
+        mHistoryLength = mMoveCount;
+        scheduleBoardUpdate();
+    }
+
+    /**
+     * Attempt to place an AI move on the board. The AI searches the position on a background
+     * thread, and the user can't place markers until it has moved.
+     */
+    private void makeAIMoveOnBoard()
+    {
+        mIsGameInProgress = true;
+
+        if (checkIfGameIsOver())
+            return;
+
+        Integer knownMove = mKnownAIMoves.get(mPosition);
+        if (null != knownMove)
+        {
+            placeAIMove(knownMove);
+            return;
+        }
+
+        final Position searchedPosition = mPosition;
+        setThinking(true);
+        mAIMoveTask = new AIMoveTask(mGameAI, AI_MOVE_BUDGET, new AIMoveTask.OnMoveFoundListener()
+        {
+            @Override
+            public void onMoveFound(int move)
+            {
+                mAIMoveTask = null;
+                setThinking(false);
+                Log.d(LOG_TAG, "AI move " + move + ": " + mGameAI.getLastSearchStats());
+
+                if (mKnownAIMoves.size() >= MAX_KNOWN_AI_MOVES)
+                    mKnownAIMoves.clear();
+                mKnownAIMoves.put(searchedPosition, move);
+                placeAIMove(move);
+            }
+        });
+        mAIMoveTask.execute(mPosition);
+    }
+
+    /**
+     * Place the move chosen by the AI on the board.
+     *
+     * @param move the cell, GameAI.NO_MOVE if the AI found none
+     */
+    private void placeAIMove(int move)
+    {
+        if (GameAI.NO_MOVE != move)
+            playMove(move);
+
+        checkIfGameIsOver();
+    }
+
+    /**
+     * Check if the user is to move after the given number of moves.
+     *
+     * @param moveCount
+     * @return true on the user's turn
+     */
+    private boolean isUserTurn(int moveCount)
+    {
+        // X always moves first
+        return (moveCount % 2 == 0) == (mUserPlayer == Player.X);
+    }
+
+    /**
+     * Get the move count that undo goes back to: the user's previous turn.
+     *
+     * @return the move count, -1 if there is nothing to undo
+     */
+    private int getUndoMoveCount()
+    {
+        if (mIsGameOver)
+            return -1;
+
+        int moveCount = mMoveCount - 1;
+        if (moveCount >= 0 && !isUserTurn(moveCount))
+            moveCount--;
+        return moveCount;
+    }
+
+    /**
+     * Get the move count that redo goes forward to: the user's next turn in the history, or
+     * the end of the history if the AI had not answered there.
+     *
+     * @return the move count, -1 if there is nothing to redo
+     */
+    private int getRedoMoveCount()
+    {
+        if (mIsGameOver || mMoveCount == mHistoryLength)
+            return -1;
+
+        int moveCount = mMoveCount + 1;
+        if (moveCount < mHistoryLength && !isUserTurn(moveCount))
+            moveCount++;
+        return moveCount;
+    }
+
+    /**
+     * Check if there is a move to take back. Moves can't be taken back once the game is over,
+     * since its outcome has been reported.
+     *
+     * @return true if undo would change the board
+     */
+    public boolean canUndo()
+    {
+        return getUndoMoveCount() >= 0;
+    }
+
+    /**
+     * Check if there is an undone move to play again.
+     *
+     * @return true if redo would change the board
+     */
+    public boolean canRedo()
+    {
+        return getRedoMoveCount() >= 0;
+    }
+
+    /**
+     * Take back moves up to the user's previous turn, stopping the AI if it is searching.
+     */
+    public void undo()
+    {
+        int moveCount = getUndoMoveCount();
+        if (moveCount < 0)
+            return;
+
+        cancelAIMove();
+        stepTo(moveCount);
+    }
+
+    /**
+     * Play the undone moves again up to the user's next turn. If the history ends on the AI's
+     * turn, the AI moves.
+     */
+    public void redo()
+    {
+        int moveCount = getRedoMoveCount();
+        if (moveCount < 0)
+            return;
+
+        stepTo(moveCount);
+        if (isUserTurn(mMoveCount))
+            checkIfGameIsOver();
+        else
+            makeAIMoveOnBoard();
+    }
+
+    /**
+     * Show the position after the given number of moves of the history.
+     *
+     * @param moveCount
+     */
+    private void stepTo(int moveCount)
+    {
+        mMoveCount = moveCount;
+        mPosition = mPositions[moveCount];
+        scheduleBoardUpdate();
+    }
+
+    /**
+     * Stop the AI search in progress, if any. Its move is never placed.
+     */
+    private void cancelAIMove()
+    {
+        if (null != mAIMoveTask)
+        {
+            mAIMoveTask.cancelSearch();
+            mAIMoveTask = null;
+            setThinking(false);
+        }
+    }
+
+    /**
+     * Block or allow user input while the AI is searching.
+     *
+     * @param isThinking true while the AI is searching
+     */
+    private void setThinking(boolean isThinking)
+    {
+        scheduleBoardUpdate();
+
+        if (null != mOnThinkingChangeListener)
+            mOnThinkingChangeListener.onThinkingChange(isThinking);
+    }
+
+    /**
+     * Check if the game is over. The outcome is reported with the next board update, once
+     * per game.
+     *
+     * @return true if game is over, false otherwise.
+     */
+    private boolean checkIfGameIsOver()
+    {
+        if (!mIsGameOver && mGameAI.isGameOver(mPosition))
+        {
+            mIsGameOver = true;
+            mPendingOutcome = mGameAI.getGameOverOutcome(mPosition);
+            scheduleBoardUpdate();
+        }
+        return mIsGameOver;
+    }
+
+    /**
+     * Apply the board changes on the next frame, unless already scheduled. Changes made
+     * before then are applied together, so a turn costs one draw pass however many parts
+     * of the game state it touches.
+     */
+    private void scheduleBoardUpdate()
+    {
+        if (!mIsBoardUpdateScheduled)
+        {
+            mIsBoardUpdateScheduled = true;
+            mBoardView.postOnAnimation(mBoardUpdate);
+        }
+    }
+
+    /**
+     * Bring the board view up to date: redraw the cells that changed, allow input only on the
+     * user's turn, and report the outcome if the game ended.
+     */
+    private void applyBoardUpdate()
+    {
+        mIsBoardUpdateScheduled = false;
+
+        mBoardView.setPosition(mPosition);
+        mBoardView.setEnabled(null == mAIMoveTask && !mIsGameOver);
+
+        if (null != mOnHistoryChangeListener)
+            mOnHistoryChangeListener.onHistoryChange(canUndo(), canRedo());
+
+        if (null != mPendingOutcome)
+        {
+            Outcome outcome = mPendingOutcome;
+            mPendingOutcome = null;
+            mOnGameOverListener.onGameOver(outcome);
+        }
+    }
+
+    /**
+     * Get the record of the game, for the user's marker. Only meaningful once the game is over.
+     *
+     * @return the moves played and the user's outcome
+     */
+    public GameRecord getGameRecord()
+    {
+        return new GameRecord(mGeometry, mUserPlayer,
+                mGameAI.getGameOverOutcome(mPosition), Arrays.copyOf(mMoves, mMoveCount));
+    }
+
+    /**
+     * Get the stats of the AI's moves so far.
+     *
+     * @return metrics
+     */
+    public SearchMetrics getSearchMetrics()
+    {
+        return mGameAI.getMetrics();
+    }
+
+    /**
+     * Stop the AI search in progress, if any, and the AI's helper threads. Call once the
+     * controller is no longer used.
+     */
+    public void release()
+    {
+        cancelAIMove();
+        mGameAI.close();
+    }
+
+    /**
+     * Initialize a new game with all blank spaces.
+     */
+    public void initNewGame()
+    {
+        cancelAIMove();
+        mIsGameOver = false;
+        mPendingOutcome = null;
+
+        mPositions[0] = new Position(mGeometry);
+        mHistoryLength = 0;
+        stepTo(0);
+
+        // If the user is playing as O, the AI gets to move first.
+        if (mUserPlayer == Player.O)
+        {
+            makeAIMoveOnBoard();
+        }
+    }
+
+    /**
+     * Sets the game over listener.
+     *
+     * @param listener
+     */
+    public void setOnGameOverListener(OnGameOverListener listener)
+    {
+        this.mOnGameOverListener = listener;
+    }
+
+    /**
+     * Sets the listener for the AI starting and finishing its search.
+     *
+     * @param listener
+     */
+    public void setOnThinkingChangeListener(OnThinkingChangeListener listener)
+    {
+        this.mOnThinkingChangeListener = listener;
+
+        // The AI may already be making the first move
+        listener.onThinkingChange(null != mAIMoveTask);
+    }
+
+    /**
+     * Sets the listener for moves becoming available to undo or redo.
+     *
+     * @param listener
+     */
+    public void setOnHistoryChangeListener(OnHistoryChangeListener listener)
+    {
+        this.mOnHistoryChangeListener = listener;
+        listener.onHistoryChange(canUndo(), canRedo());
+    }
+
+    /**
+     * Gets the status of the game.
+     *
+     * @return true if game is in progress, false otherwise.
+     */
+    public boolean isGameInProgress()
+    {
+        return mIsGameInProgress;
+    }
+
+    /**
+     * Set the player for the user to play as, and start a new game.
+     *
+     * @param userPlayer
+     */
+    public void setUserPlayer(Player userPlayer)
+    {
+        this.mUserPlayer = userPlayer;
+
+        // Set the opposite player for the Game AI
+        mGameAI.setPlayer(userPlayer.getOpponent());
+
+        initNewGame();
+    }
+
+    /**
+     * Interface to listen for changes of the current state.
+     */
+    public interface OnGameOverListener
+    {
+
+        /**
+         * Called upon a change of the current value.
+         */
+        void onGameOver(Outcome outcome);
+    }
+
+    /**
+     * Interface to listen for the AI starting and finishing its search.
+     */
+    public interface OnThinkingChangeListener
+    {
+
+        /**
+         * Called when the AI starts or finishes searching for a move.
+         */
+        void onThinkingChange(boolean isThinking);
+    }
+
+    /**
+     * Interface to listen for moves becoming available to undo or redo.
+     */
+    public interface OnHistoryChangeListener
+    {
+
+        /**
+         * Called with the board update after moves are played, undone or redone.
+         */
+        void onHistoryChange(boolean canUndo, boolean canRedo);
+    }
+}
@@ -0,0 +1,330 @@
+package com.aklopp.tictactoe;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+/**
+ * Draws the playing board and its markers, and reports the blank cells the user taps.
+ * A single view for the whole board, so a large board costs no more views or layout passes
+ * than the 3 x 3 one. Only the cells that change between positions are redrawn.
+ */
+public class GameBoardView extends View
+{
+    /**
+     * Cell returned when a point is not on any cell.
+     */
+    public static final int NO_CELL = -1;
+
+    /**
+     * Widest the lines between cells get, in dp.
+     */
+    private static final float MAX_LINE_WIDTH_DP = 10;
+
+    /**
+     * The lines between cells are at most this fraction of the space for a cell, so large
+     * boards keep most of their area for the markers.
+     */
+    private static final int CELL_SPACE_PER_LINE_WIDTH = 10;
+
+    /**
+     * The position shown.
+     */
+    private Position mPosition = new Position();
+
+    /**
+     * Width and height of a cell, in pixels.
+     */
+    private int mCellSize;
+
+    /**
+     * Width of the lines between and around the cells, in pixels.
+     */
+    private int mLineWidth;
+
+    /**
+     * Top left corner and size of the board, centered in the view.
+     */
+    private int mBoardLeft;
+    private int mBoardTop;
+    private int mBoardSize;
+
+    /**
+     * The cell the current touch started on, NO_CELL if none.
+     */
+    private int mTouchedCell = NO_CELL;
+
+    /**
+     * Reused while drawing, to avoid allocating in onDraw.
+     */
+    private final Rect mCellRect = new Rect();
+    private final Rect mClipRect = new Rect();
+    private final Paint mBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mLinePaint = new Paint();
+
+    /**
+     * The listener for taps on blank cells.
+     */
+    private OnCellClickListener mOnCellClickListener;
+
+    /**
+     * Constructor
+     *
+     * @param context
+     */
+    public GameBoardView(Context context)
+    {
+        this(context, null);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param context
+     */
+    public GameBoardView(Context context, AttributeSet attrs)
+    {
+        this(context, attrs, 0);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param context
+     */
+    public GameBoardView(Context context, AttributeSet attrs, int defStyleAttr)
+    {
+        super(context, attrs, defStyleAttr);
+
+        mLinePaint.setColor(Color.BLACK);
+    }
+
+    /**
+     * Show a position, redrawing only the cells that differ from the one shown.
+     *
+     * @param position
+     */
+    public void setPosition(Position position)
+    {
+        Position oldPosition = mPosition;
+        mPosition = position;
+
+        if (!position.getGeometry().equals(oldPosition.getGeometry()))
+        {
+            updateLayout();
+            invalidate();
+            return;
+        }
+
+        for (int i = 0; i < position.getGeometry().getWordCount(); i++)
+        {
+            long changed = (position.getWord(Player.X, i) ^ oldPosition.getWord(Player.X, i))
+                    | (position.getWord(Player.O, i) ^ oldPosition.getWord(Player.O, i));
+            while (changed != 0)
+            {
+                int cell = i * Bits.WORD_SIZE + Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+
+                getCellRect(cell, mCellRect);
+                invalidate(mCellRect.left, mCellRect.top, mCellRect.right, mCellRect.bottom);
+            }
+        }
+    }
+
+    /**
+     * Getter for the position shown.
+     *
+     * @return position
+     */
+    public Position getPosition()
+    {
+        return mPosition;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec)
+    {
+        // As tall as wide, unless the height is constrained
+        int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        int height = resolveSize(width, heightMeasureSpec);
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh)
+    {
+        super.onSizeChanged(w, h, oldw, oldh);
+        updateLayout();
+    }
+
+    /**
+     * Fit the cells and lines of the board in the view.
+     */
+    private void updateLayout()
+    {
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        int height = getHeight() - getPaddingTop() - getPaddingBottom();
+        int available = Math.max(0, Math.min(width, height));
+        int dimension = mPosition.getGeometry().getDimension();
+
+        float maxLineWidth = MAX_LINE_WIDTH_DP * getResources().getDisplayMetrics().density;
+        mLineWidth = Math.max(1, Math.min((int) maxLineWidth, available / (dimension * CELL_SPACE_PER_LINE_WIDTH)));
+        mCellSize = Math.max(0, (available - (dimension + 1) * mLineWidth) / dimension);
+
+        mBoardSize = dimension * mCellSize + (dimension + 1) * mLineWidth;
+        mBoardLeft = getPaddingLeft() + (width - mBoardSize) / 2;
+        mBoardTop = getPaddingTop() + (height - mBoardSize) / 2;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas)
+    {
+        super.onDraw(canvas);
+        if (mCellSize == 0)
+            return;
+
+        // The lines show through between the cells
+        canvas.drawRect(mBoardLeft, mBoardTop, mBoardLeft + mBoardSize, mBoardTop + mBoardSize, mLinePaint);
+
+        // Only draw the cells inside the region being redrawn
+        int dimension = mPosition.getGeometry().getDimension();
+        int firstRow = 0;
+        int lastRow = dimension - 1;
+        int firstCol = 0;
+        int lastCol = dimension - 1;
+        if (canvas.getClipBounds(mClipRect))
+        {
+            int pitch = mCellSize + mLineWidth;
+            firstRow = clamp((mClipRect.top - mBoardTop) / pitch, dimension);
+            lastRow = clamp((mClipRect.bottom - mBoardTop) / pitch, dimension);
+            firstCol = clamp((mClipRect.left - mBoardLeft) / pitch, dimension);
+            lastCol = clamp((mClipRect.right - mBoardLeft) / pitch, dimension);
+        }
+
+        BoardGeometry geometry = mPosition.getGeometry();
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            for (int col = firstCol; col <= lastCol; col++)
+            {
+                int cell = geometry.toCell(row, col);
+                Bitmap image = MarkerBitmaps.get(getResources(), mPosition.getPlayerAt(cell), mCellSize);
+                getCellRect(cell, mCellRect);
+                canvas.drawBitmap(image, null, mCellRect, mBitmapPaint);
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event)
+    {
+        if (!isEnabled())
+            return false;
+
+        switch (event.getActionMasked())
+        {
+            case MotionEvent.ACTION_DOWN:
+                mTouchedCell = getCellAt(event.getX(), event.getY());
+                break;
+            case MotionEvent.ACTION_UP:
+                // Only a tap that starts and ends on the same cell places a marker
+                int cell = getCellAt(event.getX(), event.getY());
+                if (cell != NO_CELL && cell == mTouchedCell)
+                {
+                    performClick();
+                    if (null == mPosition.getPlayerAt(cell) && null != mOnCellClickListener)
+                        mOnCellClickListener.onCellClick(cell);
+                }
+                mTouchedCell = NO_CELL;
+                break;
+            case MotionEvent.ACTION_CANCEL:
+                mTouchedCell = NO_CELL;
+                break;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean performClick()
+    {
+        return super.performClick();
+    }
+
+    /**
+     * Get the cell under a point of the view.
+     *
+     * @param x
+     * @param y
+     * @return the cell, NO_CELL if the point is on a line or outside the board
+     */
+    public int getCellAt(float x, float y)
+    {
+        int pitch = mCellSize + mLineWidth;
+        if (mCellSize == 0 || x < mBoardLeft + mLineWidth || y < mBoardTop + mLineWidth)
+            return NO_CELL;
+
+        int offsetX = (int) x - mBoardLeft - mLineWidth;
+        int offsetY = (int) y - mBoardTop - mLineWidth;
+        int row = offsetY / pitch;
+        int col = offsetX / pitch;
+        int dimension = mPosition.getGeometry().getDimension();
+        if (row >= dimension || col >= dimension || offsetX % pitch >= mCellSize || offsetY % pitch >= mCellSize)
+            return NO_CELL;
+
+        return mPosition.getGeometry().toCell(row, col);
+    }
+
+    /**
+     * Get the area of the view covered by a cell.
+     *
+     * @param cell
+     * @param rect receives the area
+     */
+    private void getCellRect(int cell, Rect rect)
+    {
+        BoardGeometry geometry = mPosition.getGeometry();
+        int pitch = mCellSize + mLineWidth;
+        int left = mBoardLeft + mLineWidth + geometry.getCol(cell) * pitch;
+        int top = mBoardTop + mLineWidth + geometry.getRow(cell) * pitch;
+        rect.set(left, top, left + mCellSize, top + mCellSize);
+    }
+
+    /**
+     * Clamp a row or column index to the board.
+     *
+     * @param index
+     * @param dimension
+     * @return 0 to dimension - 1
+     */
+    private static int clamp(int index, int dimension)
+    {
+        return Math.max(0, Math.min(dimension - 1, index));
+    }
+
+    /**
+     * Sets the listener for taps on blank cells.
+     *
+     * @param listener
+     */
+    public void setOnCellClickListener(OnCellClickListener listener)
+    {
+        this.mOnCellClickListener = listener;
+    }
+
+    /**
+     * Interface to listen for taps on blank cells.
+     */
+    public interface OnCellClickListener
+    {
+
+        /**
+         * Called when the user taps a blank cell.
+         */
+        void onCellClick(int cell);
+    }
+}
@@ -3,15 +3,22 @@ package com.aklopp.tictactoe;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.support.v4.app.Fragment;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
-import android.widget.GridView;
+import android.widget.ProgressBar;
 import android.widget.RadioGroup;
 import android.widget.TextView;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 
 /**
  * A fragment containg the gameboard, game settings and win/tie/lose rate views.
@@ -25,14 +32,36 @@ public class GameFragment extends Fragment
     private static final String BLANK_TEXT = "";
 
     /**
-     * The format of the decimal places to display for the outcome rates.
+     * The percent sign character.
      */
-    private static final String RATE_DECIMAL_FORMAT = "%.2f";
+    private static final char PERCENT_SIGN = '%';
 
     /**
-     * The percent sign character.
+     * Tag for log messages.
      */
-    private static final char PERCENT_SIGN = '%';
+    private static final String LOG_TAG = GameFragment.class.getSimpleName();
+
+    /**
+     * The file in the app's files directory that every completed game is recorded in.
+     */
+    private static final String GAME_LOG_FILE_NAME = "games.log";
+
+    /**
+     * The directory in the app's files directory that the outcome statistics are kept in.
+     */
+    private static final String STATS_DIRECTORY_NAME = "stats";
+
+    /**
+     * Runs the disk work of the outcome statistics and the game log off the UI thread, one
+     * task at a time and in order. Shared like the statistics.
+     */
+    private static final ExecutorService sDiskExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * The outcome statistics, shared by every instance of the fragment since a store must be
+     * the only one using its files. Opened on sDiskExecutor, null until open.
+     */
+    private static volatile StatsStore sStatsStore;
 
     /**
      * The textview displaying the outcome of a game.
@@ -45,9 +74,20 @@ public class GameFragment extends Fragment
     private RadioGroup mMarkerRadioGroup;
 
     /**
-     * The grid of tiles to display the game.
+     * The view displaying the game.
+     */
+    private GameBoardView mGameBoard;
+
+    /**
+     * The buttons taking back and replaying moves.
+     */
+    private Button mUndoButton;
+    private Button mRedoButton;
+
+    /**
+     * The spinner shown while the AI is choosing its move.
      */
-    private GridView mGameBoard;
+    private ProgressBar mThinkingProgressBar;
 
     /**
      * The textview displaying the current win rate.
@@ -65,26 +105,14 @@ public class GameFragment extends Fragment
     private TextView mTieRateTextView;
 
     /**
-     * The number of wins by the user.
-     */
-    private int mNumberOfWins = 0;
-    /**
-     * The number of losses by the user.
+     * The controller running the game on the board
      */
-    private int mNumberOfLosses = 0;
-    /**
-     * The number of ties by the user.
-     */
-    private int mNumberOfTies = 0;
-    /**
-     * The number of completed games - games that resulted in an outcome.
-     */
-    private int mNumberOfCompletedGames = 0;
+    private GameBoardController mGameController;
 
     /**
-     * The adapter for the game board
+     * The record of completed games, null if it isn't open. Only used on sDiskExecutor.
      */
-    private GameBoardAdapter mGameAdapter;
+    private GameLog mGameLog;
 
     /**
      * Constructor
@@ -99,8 +127,11 @@ public class GameFragment extends Fragment
     {
         View rootView = inflater.inflate(R.layout.fragment_main, container, false);
 
-        mGameBoard = (GridView) rootView.findViewById(R.id.game_board);
+        mGameBoard = (GameBoardView) rootView.findViewById(R.id.game_board);
         mGameResultTextView = (TextView) rootView.findViewById(R.id.game_result);
+        mThinkingProgressBar = (ProgressBar) rootView.findViewById(R.id.thinking);
+        mUndoButton = (Button) rootView.findViewById(R.id.undo_button);
+        mRedoButton = (Button) rootView.findViewById(R.id.redo_button);
 
         mMarkerRadioGroup = (RadioGroup) rootView.findViewById(R.id.marker_selection);
         mMarkerRadioGroup.setOnCheckedChangeListener(new RadioGroup.OnCheckedChangeListener()
@@ -109,14 +140,14 @@ public class GameFragment extends Fragment
             public void onCheckedChanged(RadioGroup group, int checkedId)
             {
                 // If we just started a fresh game, user can still switch markers
-                if (!((GameBoardAdapter) mGameBoard.getAdapter()).isGameInProgress())
+                if (!mGameController.isGameInProgress())
                 {
-                    ((GameBoardAdapter) mGameBoard.getAdapter()).setUserMarker(getCurrentMarkerSetting());
+                    mGameController.setUserPlayer(getCurrentMarkerSetting());
                 }
             }
         });
 
-        initAdapter(mGameBoard);
+        initGameController(mGameBoard);
 
         Button newGameButton = (Button) rootView.findViewById(R.id.new_game_button);
         newGameButton.setOnClickListener(new View.OnClickListener()
@@ -125,7 +156,24 @@ public class GameFragment extends Fragment
             public void onClick(View clickedView)
             {
                 mGameResultTextView.setText(BLANK_TEXT);
-                initAdapter(mGameBoard);
+                initGameController(mGameBoard);
+            }
+        });
+
+        mUndoButton.setOnClickListener(new View.OnClickListener()
+        {
+            @Override
+            public void onClick(View clickedView)
+            {
+                mGameController.undo();
+            }
+        });
+        mRedoButton.setOnClickListener(new View.OnClickListener()
+        {
+            @Override
+            public void onClick(View clickedView)
+            {
+                mGameController.redo();
             }
         });
 
@@ -133,91 +181,268 @@ public class GameFragment extends Fragment
         mLoseRateTextView = (TextView) rootView.findViewById(R.id.lose_rate);
         mTieRateTextView = (TextView) rootView.findViewById(R.id.tie_rate);
 
-        // Initialize the outcome rates if there are stored rates.
-        loadOutcomeRates();
+        // Initialize the outcome rates, the stored rates show once the statistics are open
+        setOutcomeRatesToCurrent();
+        openStatsStore();
+
+        final File gameLogFile = new File(getActivity().getFilesDir(), GAME_LOG_FILE_NAME);
+        sDiskExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    mGameLog = new GameLog(gameLogFile);
+                }
+                catch (IOException e)
+                {
+                    Log.e(LOG_TAG, "Could not open the game log", e);
+                }
+            }
+        });
 
         return rootView;
     }
 
+    @Override
+    public void onPause()
+    {
+        super.onPause();
+
+        // The app may be killed once paused, don't wait for the rest of the batch
+        if (null != sStatsStore)
+            sStatsStore.flush();
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        super.onDestroy();
+
+        if (null != mGameController)
+        {
+            mGameController.release();
+            mGameController = null;
+        }
+    }
+
+    @Override
+    public void onDestroyView()
+    {
+        super.onDestroyView();
+
+        // Runs after the games still waiting to be appended
+        sDiskExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (null == mGameLog)
+                    return;
+
+                try
+                {
+                    mGameLog.close();
+                }
+                catch (IOException e)
+                {
+                    Log.e(LOG_TAG, "Could not close the game log", e);
+                }
+                mGameLog = null;
+            }
+        });
+    }
+
     /**
      * Get the current marker selection from the radiogroup.
      *
-     * @return selected marker
+     * @return the player whose marker is selected
      */
-    private GameSpace.State getCurrentMarkerSetting()
+    private Player getCurrentMarkerSetting()
     {
-        GameSpace.State marker = GameSpace.State.BLANK;
+        Player marker = Player.X;
 
         int checkedId = mMarkerRadioGroup.getCheckedRadioButtonId();
         switch (checkedId)
         {
             case R.id.o_marker:
-                marker = GameSpace.State.O_MARK;
+                marker = Player.O;
                 break;
             case R.id.x_marker:
-                marker = GameSpace.State.X_MARK;
+                marker = Player.X;
                 break;
         }
         return marker;
     }
 
     /**
-     * Initialize the adapter for the gameboard.
+     * Initialize the controller for the gameboard, or start a new game if there is one.
      *
      * @param gameBoard
      */
-    public void initAdapter(GridView gameBoard)
+    public void initGameController(GameBoardView gameBoard)
     {
-        if (null == gameBoard.getAdapter())
+        if (null == mGameController)
         {
-            mGameAdapter = new GameBoardAdapter(getActivity(), getCurrentMarkerSetting());
-            mGameAdapter.setOnGameOverListener(new GameBoardAdapter.OnGameOverListener()
+            mGameController = new GameBoardController(gameBoard, getCurrentMarkerSetting());
+            mGameController.setOnGameOverListener(new GameBoardController.OnGameOverListener()
             {
                 @Override
-                public void onGameOver(Outcome outcome)
+                public void onGameOver(final Outcome outcome)
                 {
-                    mNumberOfCompletedGames++;
-
-                    // Increment related counter depending on outcome.
-                    switch (outcome)
+                    final GameRecord record = mGameController.getGameRecord();
+                    updateStatsStore(new StatsUpdate()
                     {
-                        case LOSE:
-                            mNumberOfLosses++;
-                            break;
-                        case WIN:
-                            mNumberOfWins++;
-                            break;
-                        case TIE:
-                            mNumberOfTies++;
-                            break;
-                    }
+                        @Override
+                        public void apply(StatsStore statsStore)
+                        {
+                            statsStore.record(record.getGeometry(), record.getMarker(), outcome);
+                        }
+                    });
 
                     mGameResultTextView.setText("YOU " + outcome.getPastTense());
-
-                    updateOutcomeRates();
+                    recordGame(record);
+                }
+            });
+            mGameController.setOnThinkingChangeListener(new GameBoardController.OnThinkingChangeListener()
+            {
+                @Override
+                public void onThinkingChange(boolean isThinking)
+                {
+                    mThinkingProgressBar.setVisibility(isThinking ? View.VISIBLE : View.INVISIBLE);
+                }
+            });
+            mGameController.setOnHistoryChangeListener(new GameBoardController.OnHistoryChangeListener()
+            {
+                @Override
+                public void onHistoryChange(boolean canUndo, boolean canRedo)
+                {
+                    mUndoButton.setEnabled(canUndo);
+                    mRedoButton.setEnabled(canRedo);
                 }
             });
-            gameBoard.setAdapter(mGameAdapter);
         } else
         {
-            mGameAdapter.setUserMarker(getCurrentMarkerSetting());
+            mGameController.setUserPlayer(getCurrentMarkerSetting());
         }
     }
 
     /**
-     * Update the visual percentages of win/lose/tie.
+     * Append the game that just ended to the game log, on the disk thread.
+     *
+     * @param record
      */
-    private void updateOutcomeRates()
+    private void recordGame(final GameRecord record)
     {
-        setOutcomeRatesToCurrent();
+        sDiskExecutor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (null == mGameLog)
+                    return;
+
+                try
+                {
+                    mGameLog.append(record);
+                }
+                catch (IOException e)
+                {
+                    Log.e(LOG_TAG, "Could not record the game", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Open the outcome statistics on the disk thread, unless they are already open, move over
+     * the counts of earlier versions and show the rates.
+     */
+    private void openStatsStore()
+    {
+        if (null != sStatsStore)
+        {
+            setOutcomeRatesToCurrent();
+            return;
+        }
+
+        final File directory = new File(getActivity().getApplicationContext().getFilesDir(), STATS_DIRECTORY_NAME);
+        final SavedOutcomes savedOutcomes = new SavedOutcomes();
+        new AsyncTask<Void, Void, StatsStore>()
+        {
+            @Override
+            protected StatsStore doInBackground(Void... params)
+            {
+                // Another instance of the fragment may have opened them first
+                if (null == sStatsStore)
+                {
+                    try
+                    {
+                        StatsStore statsStore = new StatsStore(directory);
+                        statsStore.setOnWriteErrorListener(new StatsStore.OnWriteErrorListener()
+                        {
+                            @Override
+                            public void onWriteError(IOException e)
+                            {
+                                Log.e(LOG_TAG, "Could not write the outcome statistics", e);
+                            }
+                        });
+                        savedOutcomes.migrate(statsStore);
+                        sStatsStore = statsStore;
+                    }
+                    catch (IOException e)
+                    {
+                        Log.e(LOG_TAG, "Could not open the outcome statistics", e);
+                    }
+                }
+                return sStatsStore;
+            }
 
-        SharedPreferences sharedPref = getActivity().getPreferences(Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPref.edit();
-        editor.putInt(getString(R.string.saved_win_rate), mNumberOfWins);
-        editor.putInt(getString(R.string.saved_lose_rate), mNumberOfLosses);
-        editor.putInt(getString(R.string.saved_tie_rate), mNumberOfTies);
-        editor.putInt(getString(R.string.saved_num_games), mNumberOfCompletedGames);
-        editor.commit();
+            @Override
+            protected void onPostExecute(StatsStore statsStore)
+            {
+                if (null != statsStore && null != getView())
+                    setOutcomeRatesToCurrent();
+            }
+        }.executeOnExecutor(sDiskExecutor);
+    }
+
+    /**
+     * Change the outcome statistics, then show the rates. The counts live in memory, so once
+     * the statistics are open this runs at once on the UI thread; before that it waits on the
+     * disk thread for them to open.
+     *
+     * @param update
+     */
+    private void updateStatsStore(final StatsUpdate update)
+    {
+        StatsStore statsStore = sStatsStore;
+        if (null != statsStore)
+        {
+            update.apply(statsStore);
+            setOutcomeRatesToCurrent();
+            return;
+        }
+
+        new AsyncTask<Void, Void, Void>()
+        {
+            @Override
+            protected Void doInBackground(Void... params)
+            {
+                StatsStore statsStore = sStatsStore;
+                if (null != statsStore)
+                    update.apply(statsStore);
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void result)
+            {
+                if (null != getView())
+                    setOutcomeRatesToCurrent();
+            }
+        }.executeOnExecutor(sDiskExecutor);
     }
 
     /**
@@ -225,32 +450,41 @@ public class GameFragment extends Fragment
      */
     private void setOutcomeRatesToCurrent()
     {
-        String defaultRate = getResources().getString(R.string.default_rate);
-        if (mNumberOfCompletedGames == 0)
+        StatsStore statsStore = sStatsStore;
+        long numberOfCompletedGames = (null == statsStore) ? 0 : statsStore.getGameCount();
+        if (numberOfCompletedGames == 0)
         {
+            String defaultRate = getResources().getString(R.string.default_rate);
             mWinRateTextView.setText(defaultRate);
             mLoseRateTextView.setText(defaultRate);
             mTieRateTextView.setText(defaultRate);
         } else
         {
-            mWinRateTextView.setText((String.format(RATE_DECIMAL_FORMAT, (((float) mNumberOfWins / mNumberOfCompletedGames) * 100f))) + PERCENT_SIGN);
-            mLoseRateTextView.setText((String.format(RATE_DECIMAL_FORMAT, (((float) mNumberOfLosses / mNumberOfCompletedGames) * 100f))) + PERCENT_SIGN);
-            mTieRateTextView.setText((String.format(RATE_DECIMAL_FORMAT, (((float) mNumberOfTies / mNumberOfCompletedGames) * 100f))) + PERCENT_SIGN);
+            mWinRateTextView.setText(formatRate(statsStore.getCount(Outcome.WIN), numberOfCompletedGames));
+            mLoseRateTextView.setText(formatRate(statsStore.getCount(Outcome.LOSE), numberOfCompletedGames));
+            mTieRateTextView.setText(formatRate(statsStore.getCount(Outcome.TIE), numberOfCompletedGames));
         }
     }
 
     /**
-     * Loads the previous outcome rates from SharedPreferences
+     * Format a rate as a percentage with two decimal places, without going through
+     * String.format.
+     *
+     * @param count
+     * @param total
+     * @return the percentage, e.g. 12.50%
      */
-    private void loadOutcomeRates()
+    private static String formatRate(long count, long total)
     {
-        SharedPreferences sharedPref = getActivity().getPreferences(Context.MODE_PRIVATE);
-        mNumberOfWins = sharedPref.getInt(getString(R.string.saved_win_rate), 0);
-        mNumberOfLosses = sharedPref.getInt(getString(R.string.saved_lose_rate), 0);
-        mNumberOfTies = sharedPref.getInt(getString(R.string.saved_tie_rate), 0);
-        mNumberOfCompletedGames = sharedPref.getInt(getString(R.string.saved_num_games), 0);
-
-        setOutcomeRatesToCurrent();
+        long hundredths = (count * 10000 + total / 2) / total;
+        long fraction = hundredths % 100;
+        return new StringBuilder()
+                .append(hundredths / 100)
+                .append('.')
+                .append(fraction < 10 ? "0" : "")
+                .append(fraction)
+                .append(PERCENT_SIGN)
+                .toString();
     }
 
     /**
@@ -258,11 +492,90 @@ public class GameFragment extends Fragment
      */
     public void clearScores()
     {
-        mNumberOfWins = 0;
-        mNumberOfLosses = 0;
-        mNumberOfTies = 0;
-        mNumberOfCompletedGames = 0;
+        updateStatsStore(new StatsUpdate()
+        {
+            @Override
+            public void apply(StatsStore statsStore)
+            {
+                statsStore.clear();
+            }
+        });
+    }
+
+    /**
+     * The outcome counts kept in SharedPreferences by earlier versions. They were only kept for
+     * the 3 x 3 board, without the marker. Created on the UI thread, migrated on the disk thread.
+     */
+    private final class SavedOutcomes
+    {
+        private final SharedPreferences mSharedPref = getActivity().getPreferences(Context.MODE_PRIVATE);
+        private final String mWinKey = getString(R.string.saved_win_rate);
+        private final String mLoseKey = getString(R.string.saved_lose_rate);
+        private final String mTieKey = getString(R.string.saved_tie_rate);
+        private final String mGameCountKey = getString(R.string.saved_num_games);
+
+        /**
+         * Move the counts into the statistics store, if there are any. They are removed from
+         * SharedPreferences only once the store has written them, so a crash in between can't
+         * lose them. Blocks until both writes are done.
+         *
+         * @param statsStore
+         */
+        void migrate(StatsStore statsStore)
+        {
+            if (!mSharedPref.contains(mGameCountKey))
+                return;
+
+            add(statsStore, 1);
+            try
+            {
+                statsStore.sync();
+            }
+            catch (IOException e)
+            {
+                // Take them back out, they are moved again on the next launch
+                Log.e(LOG_TAG, "Could not move the saved outcomes", e);
+                add(statsStore, -1);
+                return;
+            }
+            catch (InterruptedException e)
+            {
+                add(statsStore, -1);
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            mSharedPref.edit()
+                    .remove(mWinKey)
+                    .remove(mLoseKey)
+                    .remove(mTieKey)
+                    .remove(mGameCountKey)
+                    .commit();
+        }
+
+        /**
+         * Add the saved counts to the store, or take them out again.
+         *
+         * @param statsStore
+         * @param sign       1 to add, -1 to take out
+         */
+        private void add(StatsStore statsStore, int sign)
+        {
+            statsStore.add(BoardGeometry.STANDARD, null, Outcome.WIN, sign * mSharedPref.getInt(mWinKey, 0));
+            statsStore.add(BoardGeometry.STANDARD, null, Outcome.LOSE, sign * mSharedPref.getInt(mLoseKey, 0));
+            statsStore.add(BoardGeometry.STANDARD, null, Outcome.TIE, sign * mSharedPref.getInt(mTieKey, 0));
+        }
+    }
+
+    /**
+     * A change to the outcome statistics.
+     */
+    private interface StatsUpdate
+    {
 
-        updateOutcomeRates();
+        /**
+         * Called with the open statistics, on the UI thread or the disk thread.
+         */
+        void apply(StatsStore statsStore);
     }
 }
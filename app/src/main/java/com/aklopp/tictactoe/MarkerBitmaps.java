@@ -0,0 +1,76 @@
+package com.aklopp.tictactoe;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+/**
+ * Process-wide cache of the images shown in a cell of the board, shared by every cell.
+ * Each image is decoded once, then scaled once to the cell size, so the memory and the time
+ * to draw a board do not grow with the number of cells. Only the last cell size is kept,
+ * since all the cells of a board have the same size.
+ */
+final class MarkerBitmaps
+{
+    /**
+     * Image resource of a blank cell, then of the marker of each player by ordinal.
+     */
+    private static final int[] IMAGE_IDS = {R.drawable.blank, R.drawable.ic_x_marker, R.drawable.ic_o_marker};
+
+    /**
+     * Images as decoded, by image index, null until first needed.
+     */
+    private static Bitmap[] sDecodedImages;
+
+    /**
+     * Images scaled to sScaledSize, by image index, null until first needed.
+     */
+    private static Bitmap[] sScaledImages;
+
+    /**
+     * Width and height of the scaled images, in pixels.
+     */
+    private static int sScaledSize;
+
+    private MarkerBitmaps()
+    {
+    }
+
+    /**
+     * Get the image of a cell, scaled to a square cell.
+     *
+     * @param resources
+     * @param player    the player whose marker is on the cell, null for a blank cell
+     * @param size      width and height of the cell in pixels, 0 or less if not laid out yet
+     * @return the shared image, unscaled if the size is not known
+     */
+    static synchronized Bitmap get(Resources resources, Player player, int size)
+    {
+        int index = (null == player) ? 0 : player.ordinal() + 1;
+        if (null == sDecodedImages)
+        {
+            sDecodedImages = new Bitmap[IMAGE_IDS.length];
+            for (int i = 0; i < IMAGE_IDS.length; i++)
+                sDecodedImages[i] = BitmapFactory.decodeResource(resources, IMAGE_IDS[i]);
+        }
+
+        Bitmap decoded = sDecodedImages[index];
+        if (size <= 0)
+            return decoded;
+
+        if (null == sScaledImages || size != sScaledSize)
+        {
+            // Drop the images of the old size, so at most one set is held besides the decoded one
+            sScaledImages = new Bitmap[IMAGE_IDS.length];
+            sScaledSize = size;
+        }
+
+        Bitmap scaled = sScaledImages[index];
+        if (null == scaled)
+        {
+            scaled = Bitmap.createScaledBitmap(decoded, size, size, true);
+            sScaledImages[index] = scaled;
+        }
+        return scaled;
+    }
+}
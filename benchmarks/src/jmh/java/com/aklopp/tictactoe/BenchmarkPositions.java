@@ -0,0 +1,109 @@
+package com.aklopp.tictactoe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Representative positions for the JMH benchmarks. A shallow self-play game is played on the
+ * board, and positions are taken from its start, its middle and just before its end.
+ */
+final class BenchmarkPositions
+{
+    /**
+     * Depth of the self-play game, shallow so the game is quick to play but still sensible.
+     */
+    private static final int GAME_DEPTH = 2;
+
+    /**
+     * Moves left to play in the near-terminal position.
+     */
+    private static final int MOVES_BEFORE_END = 2;
+
+    private BenchmarkPositions()
+    {
+    }
+
+    /**
+     * Get the geometry of a board parameter.
+     *
+     * @param board 3x3, 5x5 or 15x15
+     * @return geometry, tic-tac-toe, 4 in a row or gomoku
+     */
+    static BoardGeometry getGeometry(String board)
+    {
+        switch (board)
+        {
+            case "3x3":
+                return BoardGeometry.STANDARD;
+            case "5x5":
+                return BoardGeometry.get(5, 4);
+            case "15x15":
+                return BoardGeometry.get(15, 5);
+        }
+        throw new IllegalArgumentException("Unknown board: " + board);
+    }
+
+    /**
+     * Get the search depth that keeps makeMove in the millisecond range on a board.
+     *
+     * @param board 3x3, 5x5 or 15x15
+     * @return depth
+     */
+    static int getSearchDepth(String board)
+    {
+        switch (board)
+        {
+            case "3x3":
+                return 9;
+            case "5x5":
+                return 4;
+            case "15x15":
+                return 3;
+        }
+        throw new IllegalArgumentException("Unknown board: " + board);
+    }
+
+    /**
+     * Get a position of the self-play game on a board.
+     *
+     * @param geometry
+     * @param phase    empty, midgame or endgame
+     * @return position
+     */
+    static Position get(BoardGeometry geometry, String phase)
+    {
+        List<Position> game = playGame(geometry);
+        switch (phase)
+        {
+            case "empty":
+                return game.get(0);
+            case "midgame":
+                return game.get(game.size() / 2);
+            case "endgame":
+                return game.get(Math.max(0, game.size() - 1 - MOVES_BEFORE_END));
+        }
+        throw new IllegalArgumentException("Unknown phase: " + phase);
+    }
+
+    /**
+     * Play the AI against itself.
+     *
+     * @return every position of the game, from the empty board to the final position
+     */
+    private static List<Position> playGame(BoardGeometry geometry)
+    {
+        GameAI gameAI = new GameAI(geometry);
+        gameAI.setMaxDepth(GAME_DEPTH);
+        gameAI.setThreadCount(1);
+
+        List<Position> game = new ArrayList<>();
+        Position position = new Position(geometry);
+        game.add(position);
+        while (!position.isGameOver())
+        {
+            position = position.play(gameAI.selectMove(position));
+            game.add(position);
+        }
+        return game;
+    }
+}
@@ -0,0 +1,95 @@
+package com.aklopp.tictactoe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the building blocks of the search: win detection, move generation and the
+ * heuristic score, on the same positions as MakeMoveBenchmark.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark
+{
+    /**
+     * The board.
+     */
+    @Param({"3x3", "5x5", "15x15"})
+    public String board;
+
+    /**
+     * Where in the game the position is taken from.
+     */
+    @Param({"empty", "midgame", "endgame"})
+    public String phase;
+
+    /**
+     * The AI under test.
+     */
+    private GameAI mGameAI;
+
+    /**
+     * The position measured.
+     */
+    private Position mPosition;
+
+    @Setup
+    public void setUp()
+    {
+        BoardGeometry geometry = BenchmarkPositions.getGeometry(board);
+        mPosition = BenchmarkPositions.get(geometry, phase);
+        mGameAI = new GameAI(geometry);
+        mGameAI.setThreadCount(1);
+        mGameAI.setPlayer(mPosition.getPlayerToMove());
+        mGameAI.setSearchPosition(mPosition);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        mGameAI.close();
+    }
+
+    /**
+     * Both players are checked, as when testing whether the game is over.
+     */
+    @Benchmark
+    public boolean hasWon()
+    {
+        return mPosition.hasWon(Player.X) | mPosition.hasWon(Player.O);
+    }
+
+    /**
+     * Generates the ordered moves of the root of a search, without loading the position.
+     */
+    @Benchmark
+    public int getPossibleMoves()
+    {
+        return mGameAI.getPossibleMoves();
+    }
+
+    /**
+     * Loads the position into the search board and scores it.
+     */
+    @Benchmark
+    public int getScore()
+    {
+        return mGameAI.getScore(mPosition);
+    }
+}
@@ -0,0 +1,78 @@
+package com.aklopp.tictactoe;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a full move selection by the game AI. The transposition table is cleared before
+ * every search so each one does the same work, as the first search of a new game would.
+ * The search runs on the benchmark thread only, helper threads would hide regressions in the
+ * search itself; ScalingBenchmark covers the parallel search.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MakeMoveBenchmark
+{
+    /**
+     * The board, searched to the depth given by BenchmarkPositions.getSearchDepth.
+     */
+    @Param({"3x3", "5x5", "15x15"})
+    public String board;
+
+    /**
+     * Where in the game the position is taken from.
+     */
+    @Param({"empty", "midgame", "endgame"})
+    public String phase;
+
+    /**
+     * The AI under test.
+     */
+    private GameAI mGameAI;
+
+    /**
+     * The position searched.
+     */
+    private Position mPosition;
+
+    @Setup(Level.Trial)
+    public void setUpTrial()
+    {
+        BoardGeometry geometry = BenchmarkPositions.getGeometry(board);
+        mPosition = BenchmarkPositions.get(geometry, phase);
+        mGameAI = new GameAI(geometry);
+
+        // A depth limit also keeps the 3 x 3 search away from the perfect play table
+        mGameAI.setMaxDepth(BenchmarkPositions.getSearchDepth(board));
+        mGameAI.setThreadCount(1);
+        mGameAI.setPlayer(mPosition.getPlayerToMove());
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation()
+    {
+        mGameAI.getTranspositionTable().clear();
+    }
+
+    @Benchmark
+    public int makeMove()
+    {
+        return mGameAI.makeMove(mPosition);
+    }
+}
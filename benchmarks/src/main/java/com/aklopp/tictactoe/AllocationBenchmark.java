@@ -0,0 +1,97 @@
+package com.aklopp.tictactoe;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap allocated by the game AI search, per search and per node visited.
+ * Positions are taken from a self-play game on each board and searched with a cleared
+ * transposition table, so every search does real work. In steady state the only allocation
+ * should be the SearchStats of each move, nothing per node.
+ * Run with: ./gradlew :benchmarks:run
+ */
+public class AllocationBenchmark
+{
+    /**
+     * Board dimension, markers in a row and search depth of each scenario.
+     */
+    private static final int[][] SCENARIOS = {{3, 3, 9}, {4, 4, 4}, {5, 4, 4}, {15, 5, 3}};
+
+    /**
+     * Rounds over all positions run before measuring, so the JIT has compiled the search.
+     */
+    private static final int WARMUP_ROUNDS = 20;
+
+    /**
+     * Rounds over all positions that are measured.
+     */
+    private static final int MEASURED_ROUNDS = 10;
+
+    public static void main(String[] args)
+    {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for (int[] scenario : SCENARIOS)
+        {
+            BoardGeometry geometry = BoardGeometry.get(scenario[0], scenario[1]);
+            GameAI gameAI = new GameAI(geometry);
+            gameAI.setMaxDepth(scenario[2]);
+
+            // Only the calling thread is measured, so keep the whole search on it
+            gameAI.setThreadCount(1);
+            List<Position> positions = playGame(gameAI);
+
+            for (int round = 0; round < WARMUP_ROUNDS; round++)
+                searchAll(gameAI, positions);
+
+            long nodeCount = 0;
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            for (int round = 0; round < MEASURED_ROUNDS; round++)
+                nodeCount += searchAll(gameAI, positions);
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+            long searchCount = (long) MEASURED_ROUNDS * positions.size();
+            System.out.println(String.format("%-8s depth %d: %d searches, %d nodes, %d bytes, %.3f bytes/search, %.5f bytes/node",
+                    geometry, scenario[2], searchCount, nodeCount, allocated,
+                    (double) allocated / searchCount, (double) allocated / nodeCount));
+        }
+    }
+
+    /**
+     * Play the AI against itself and collect every position where a move was chosen.
+     */
+    private static List<Position> playGame(GameAI gameAI)
+    {
+        List<Position> positions = new ArrayList<>();
+        Position position = new Position(gameAI.getGeometry());
+        while (!position.isGameOver())
+        {
+            positions.add(position);
+            gameAI.setPlayer(position.getPlayerToMove());
+            position = position.play(gameAI.makeMove(position));
+        }
+        return positions;
+    }
+
+    /**
+     * Search every position from scratch.
+     *
+     * @return the number of nodes visited
+     */
+    private static long searchAll(GameAI gameAI, List<Position> positions)
+    {
+        long nodeCount = 0;
+        for (int i = 0; i < positions.size(); i++)
+        {
+            Position position = positions.get(i);
+            gameAI.getTranspositionTable().clear();
+            gameAI.setPlayer(position.getPlayerToMove());
+            gameAI.makeMove(position);
+            nodeCount += gameAI.getNodeCount();
+        }
+        return nodeCount;
+    }
+}
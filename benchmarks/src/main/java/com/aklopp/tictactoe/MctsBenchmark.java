@@ -0,0 +1,107 @@
+package com.aklopp.tictactoe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the playout rate of the Monte Carlo tree search with 1, 2, 4, ... threads sharing
+ * the tree: playouts per second in total and per thread, and the speedup over one thread.
+ * Positions are taken from the first half of a self-play game on each board, and each is
+ * searched with a fixed number of playouts.
+ * Run with: ./gradlew :benchmarks:mctsBenchmark [-PmaxThreads=N]
+ */
+public class MctsBenchmark
+{
+    /**
+     * Board dimension and markers in a row of each scenario.
+     */
+    private static final int[][] SCENARIOS = {{3, 3}, {9, 5}, {15, 5}};
+
+    /**
+     * Playouts per move of the self-play game the positions come from.
+     */
+    private static final int GAME_PLAYOUTS = 2000;
+
+    /**
+     * Playouts per measured search.
+     */
+    private static final int SEARCH_PLAYOUTS = 20000;
+
+    /**
+     * Rounds over all positions run before measuring, so the JIT has compiled the playouts.
+     */
+    private static final int WARMUP_ROUNDS = 2;
+
+    /**
+     * Rounds over all positions that are measured.
+     */
+    private static final int MEASURED_ROUNDS = 3;
+
+    public static void main(String[] args)
+    {
+        int maxThreads = (args.length > 0)
+                ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        for (int[] scenario : SCENARIOS)
+        {
+            BoardGeometry geometry = BoardGeometry.get(scenario[0], scenario[1]);
+            MctsAI mctsAI = new MctsAI(geometry);
+            mctsAI.setThreadCount(1);
+            List<Position> positions = playGame(mctsAI);
+
+            double singleThreadRate = 0;
+            for (int threadCount = 1; threadCount <= maxThreads; threadCount *= 2)
+            {
+                mctsAI.setThreadCount(threadCount);
+                for (int round = 0; round < WARMUP_ROUNDS; round++)
+                    searchAll(mctsAI, positions);
+
+                long playoutCount = 0;
+                long start = System.nanoTime();
+                for (int round = 0; round < MEASURED_ROUNDS; round++)
+                    playoutCount += searchAll(mctsAI, positions);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                double rate = playoutCount / seconds;
+                if (threadCount == 1)
+                    singleThreadRate = rate;
+                System.out.println(String.format("%-8s %2d threads: %9.0f playouts/sec, %9.0f playouts/sec/thread, speedup %.2f",
+                        geometry, threadCount, rate, rate / threadCount, rate / singleThreadRate));
+            }
+            mctsAI.close();
+        }
+    }
+
+    /**
+     * Play the AI against itself and collect the positions of the first half of the game.
+     */
+    private static List<Position> playGame(MctsAI mctsAI)
+    {
+        List<Position> positions = new ArrayList<>();
+        Position position = new Position(mctsAI.getGeometry());
+        SearchBudget budget = SearchBudget.ofNodes(GAME_PLAYOUTS);
+        while (!position.isGameOver() && position.getEmptyCount() > mctsAI.getGeometry().getCellCount() / 2)
+        {
+            positions.add(position);
+            position = position.play(mctsAI.makeMove(position, budget));
+        }
+        return positions;
+    }
+
+    /**
+     * Search every position with a fresh tree.
+     *
+     * @return the number of playouts run
+     */
+    private static long searchAll(MctsAI mctsAI, List<Position> positions)
+    {
+        SearchBudget budget = SearchBudget.ofNodes(SEARCH_PLAYOUTS);
+        long playoutCount = 0;
+        for (int i = 0; i < positions.size(); i++)
+        {
+            mctsAI.makeMove(positions.get(i), budget);
+            playoutCount += mctsAI.getPlayoutCount();
+        }
+        return playoutCount;
+    }
+}
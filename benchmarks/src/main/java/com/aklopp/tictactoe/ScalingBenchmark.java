@@ -0,0 +1,101 @@
+package com.aklopp.tictactoe;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how the parallel search scales with the number of threads: the time to search a set
+ * of positions to a fixed depth with 1, 2, 4, ... threads, the speedup over one thread and the
+ * efficiency (speedup / threads). Positions are taken from a self-play game on each board and
+ * searched with a cleared transposition table.
+ * Run with: ./gradlew :benchmarks:scalingBenchmark [-PmaxThreads=N]
+ */
+public class ScalingBenchmark
+{
+    /**
+     * Board dimension, markers in a row and search depth of each scenario.
+     */
+    private static final int[][] SCENARIOS = {{5, 4, 7}, {8, 5, 5}, {15, 5, 4}};
+
+    /**
+     * Rounds over all positions run before measuring, so the JIT has compiled the search.
+     */
+    private static final int WARMUP_ROUNDS = 2;
+
+    /**
+     * Rounds over all positions that are measured.
+     */
+    private static final int MEASURED_ROUNDS = 3;
+
+    public static void main(String[] args)
+    {
+        int maxThreads = (args.length > 0)
+                ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+
+        for (int[] scenario : SCENARIOS)
+        {
+            BoardGeometry geometry = BoardGeometry.get(scenario[0], scenario[1]);
+            GameAI gameAI = new GameAI(geometry);
+            gameAI.setMaxDepth(scenario[2]);
+            gameAI.setThreadCount(1);
+            List<Position> positions = playGame(gameAI);
+
+            double singleThreadMillis = 0;
+            for (int threadCount = 1; threadCount <= maxThreads; threadCount *= 2)
+            {
+                gameAI.setThreadCount(threadCount);
+                for (int round = 0; round < WARMUP_ROUNDS; round++)
+                    searchAll(gameAI, positions);
+
+                long nodeCount = 0;
+                long start = System.nanoTime();
+                for (int round = 0; round < MEASURED_ROUNDS; round++)
+                    nodeCount += searchAll(gameAI, positions);
+                double millis = (System.nanoTime() - start) / 1e6;
+
+                if (threadCount == 1)
+                    singleThreadMillis = millis;
+                double speedup = singleThreadMillis / millis;
+                System.out.println(String.format("%-8s depth %d, %2d threads: %9.1f ms, %8.0f nodes/ms, speedup %.2f, efficiency %.2f",
+                        geometry, scenario[2], threadCount, millis, nodeCount / millis, speedup, speedup / threadCount));
+            }
+            gameAI.close();
+        }
+    }
+
+    /**
+     * Play the AI against itself and collect the positions of the first half of the game,
+     * where the search has the most work to do.
+     */
+    private static List<Position> playGame(GameAI gameAI)
+    {
+        List<Position> positions = new ArrayList<>();
+        Position position = new Position(gameAI.getGeometry());
+        while (!position.isGameOver() && position.getEmptyCount() > gameAI.getGeometry().getCellCount() / 2)
+        {
+            positions.add(position);
+            gameAI.setPlayer(position.getPlayerToMove());
+            position = position.play(gameAI.makeMove(position));
+        }
+        return positions;
+    }
+
+    /**
+     * Search every position from scratch.
+     *
+     * @return the number of nodes visited
+     */
+    private static long searchAll(GameAI gameAI, List<Position> positions)
+    {
+        long nodeCount = 0;
+        for (int i = 0; i < positions.size(); i++)
+        {
+            Position position = positions.get(i);
+            gameAI.getTranspositionTable().clear();
+            gameAI.setPlayer(position.getPlayerToMove());
+            gameAI.makeMove(position);
+            nodeCount += gameAI.getNodeCount();
+        }
+        return nodeCount;
+    }
+}
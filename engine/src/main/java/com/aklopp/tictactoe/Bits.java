@@ -0,0 +1,134 @@
+package com.aklopp.tictactoe;
+
+/**
+ * Helpers for cell bitsets stored as arrays of 64-bit words. Cell c is bit (c % 64) of word
+ * (c / 64), so boards up to 8 x 8 fit in a single long.
+ */
+public final class Bits
+{
+    /**
+     * Number of cells held by one word.
+     */
+    public static final int WORD_SIZE = 64;
+
+    /**
+     * Constructor, not instantiable.
+     */
+    private Bits()
+    {
+    }
+
+    /**
+     * Get the number of words needed to hold the given number of cells.
+     *
+     * @param cellCount
+     * @return word count
+     */
+    public static int getWordCount(int cellCount)
+    {
+        return (cellCount + WORD_SIZE - 1) / WORD_SIZE;
+    }
+
+    /**
+     * Get the index of the word holding a cell.
+     *
+     * @param cell
+     * @return word index
+     */
+    public static int getWordIndex(int cell)
+    {
+        return cell >>> 6;
+    }
+
+    /**
+     * Get the bit of a cell within its word.
+     *
+     * @param cell
+     * @return single-bit mask
+     */
+    public static long getBit(int cell)
+    {
+        // Shifts of a long only use the low 6 bits of the distance
+        return 1L << cell;
+    }
+
+    /**
+     * Check if a cell is set.
+     *
+     * @param words
+     * @param cell
+     * @return true if set
+     */
+    public static boolean isSet(long[] words, int cell)
+    {
+        return (words[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Set a cell.
+     *
+     * @param words
+     * @param cell
+     */
+    public static void set(long[] words, int cell)
+    {
+        words[cell >>> 6] |= 1L << cell;
+    }
+
+    /**
+     * Clear a cell.
+     *
+     * @param words
+     * @param cell
+     */
+    public static void clear(long[] words, int cell)
+    {
+        words[cell >>> 6] &= ~(1L << cell);
+    }
+
+    /**
+     * Count the cells that are set.
+     *
+     * @param words
+     * @return cell count
+     */
+    public static int count(long[] words)
+    {
+        int count = 0;
+        for (long word : words)
+            count += Long.bitCount(word);
+        return count;
+    }
+
+    /**
+     * Check if no cell is set.
+     *
+     * @param words
+     * @return true if empty
+     */
+    public static boolean isEmpty(long[] words)
+    {
+        for (long word : words)
+        {
+            if (word != 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the lowest cell that is set.
+     *
+     * @param words
+     * @return the cell, -1 if none is set
+     */
+    public static int getFirst(long[] words)
+    {
+        for (int i = 0; i < words.length; i++)
+        {
+            if (words[i] != 0)
+                return i * WORD_SIZE + Long.numberOfTrailingZeros(words[i]);
+        }
+        return -1;
+    }
+}
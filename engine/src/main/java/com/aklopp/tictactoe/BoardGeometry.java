@@ -0,0 +1,524 @@
+package com.aklopp.tictactoe;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The rules of an N x N board won by K markers in a row: the cells, every winning line as a
+ * bitmask, the board symmetries and the hashing keys.
+ * Cells are numbered row by row, cell (row * N + col). Boards up to 8 x 8 fit each line mask in
+ * a single long, larger boards use one long per 64 cells (see Bits).
+ */
+public final class BoardGeometry
+{
+    /**
+     * The classic 3 x 3 board, three in a row.
+     */
+    public static final BoardGeometry STANDARD = new BoardGeometry(3, 3);
+
+    /**
+     * Every geometry built so far, keyed by dimension and line length, since building one
+     * generates all of its lines and keys.
+     */
+    private static final ConcurrentMap<Integer, BoardGeometry> sGeometries = new ConcurrentHashMap<>();
+
+    /**
+     * Boards with more cells than this only consider moves next to existing markers,
+     * searching every empty cell would be far too slow.
+     */
+    private static final int FULL_WIDTH_CELL_LIMIT = 25;
+
+    /**
+     * One dimension (l or w) of the board.
+     */
+    private final int mDimension;
+
+    /**
+     * The number of markers in a row needed to win.
+     */
+    private final int mLineLength;
+
+    /**
+     * The number of cells on the board.
+     */
+    private final int mCellCount;
+
+    /**
+     * The number of longs needed for a bitset of all cells.
+     */
+    private final int mWordCount;
+
+    /**
+     * The cells of every winning line.
+     */
+    private final int[][] mLineCells;
+
+    /**
+     * For every cell, the winning lines passing through it.
+     */
+    private final int[][] mCellLines;
+
+    /**
+     * The bitmask of every winning line, mWordCount longs per line.
+     */
+    private final long[] mLineMasks;
+
+    /**
+     * For every cell, the cells next to it (including diagonally), mWordCount longs per cell.
+     */
+    private final long[] mNeighborMasks;
+
+    /**
+     * Every cell, in the order the search should try them: cells on the most lines first.
+     */
+    private final int[] mMoveOrder;
+
+    /**
+     * For every cell, its index in mMoveOrder.
+     */
+    private final int[] mMoveRanks;
+
+    /**
+     * Rotations and reflections of the board.
+     */
+    private final BoardSymmetry mSymmetry;
+
+    /**
+     * Hashing keys for the cells of the board.
+     */
+    private final Zobrist mZobrist;
+
+    /**
+     * Constructor
+     *
+     * @param dimension  one dimension (l or w) of the board
+     * @param lineLength number of markers in a row needed to win
+     */
+    public BoardGeometry(int dimension, int lineLength)
+    {
+        if (dimension < 1 || lineLength < 1 || lineLength > dimension)
+            throw new IllegalArgumentException(
+                    "Invalid board: " + dimension + " x " + dimension + ", " + lineLength + " in a row");
+
+        mDimension = dimension;
+        mLineLength = lineLength;
+        mCellCount = dimension * dimension;
+        mWordCount = Bits.getWordCount(mCellCount);
+
+        mLineCells = generateLines(dimension, lineLength);
+        mCellLines = indexLines(mLineCells, mCellCount);
+        mLineMasks = new long[mLineCells.length * mWordCount];
+        for (int line = 0; line < mLineCells.length; line++)
+        {
+            for (int cell : mLineCells[line])
+                mLineMasks[line * mWordCount + Bits.getWordIndex(cell)] |= Bits.getBit(cell);
+        }
+
+        mNeighborMasks = new long[mCellCount * mWordCount];
+        for (int cell = 0; cell < mCellCount; cell++)
+        {
+            for (int dRow = -1; dRow <= 1; dRow++)
+            {
+                for (int dCol = -1; dCol <= 1; dCol++)
+                {
+                    int row = getRow(cell) + dRow;
+                    int col = getCol(cell) + dCol;
+                    if ((dRow != 0 || dCol != 0) && isOnBoard(row, col))
+                    {
+                        int neighbor = toCell(row, col);
+                        mNeighborMasks[cell * mWordCount + Bits.getWordIndex(neighbor)] |= Bits.getBit(neighbor);
+                    }
+                }
+            }
+        }
+
+        mMoveOrder = generateMoveOrder();
+        mMoveRanks = new int[mCellCount];
+        for (int i = 0; i < mCellCount; i++)
+            mMoveRanks[mMoveOrder[i]] = i;
+        mSymmetry = new BoardSymmetry(dimension);
+        mZobrist = new Zobrist(mCellCount);
+    }
+
+    /**
+     * Get the geometry for the given board. Geometries are immutable, so every board shares
+     * one instance, STANDARD for 3 x 3 boards.
+     *
+     * @param dimension  one dimension (l or w) of the board
+     * @param lineLength number of markers in a row needed to win
+     * @return geometry
+     */
+    public static BoardGeometry get(int dimension, int lineLength)
+    {
+        if (dimension == STANDARD.mDimension && lineLength == STANDARD.mLineLength)
+            return STANDARD;
+
+        Integer key = (dimension << 16) | (lineLength & 0xFFFF);
+        BoardGeometry geometry = sGeometries.get(key);
+        if (null == geometry)
+        {
+            geometry = new BoardGeometry(dimension, lineLength);
+            BoardGeometry existing = sGeometries.putIfAbsent(key, geometry);
+            if (null != existing)
+                geometry = existing;
+        }
+        return geometry;
+    }
+
+    /**
+     * Build the cell lists of every horizontal, vertical and diagonal run of lineLength cells.
+     */
+    private static int[][] generateLines(int dimension, int lineLength)
+    {
+        // Row, column steps: across, down, down-right, down-left
+        int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+        List<int[]> lines = new ArrayList<>();
+        for (int[] direction : directions)
+        {
+            for (int row = 0; row < dimension; row++)
+            {
+                for (int col = 0; col < dimension; col++)
+                {
+                    int endRow = row + direction[0] * (lineLength - 1);
+                    int endCol = col + direction[1] * (lineLength - 1);
+                    if (endRow < 0 || endRow >= dimension || endCol < 0 || endCol >= dimension)
+                        continue;
+
+                    int[] line = new int[lineLength];
+                    for (int i = 0; i < lineLength; i++)
+                        line[i] = (row + direction[0] * i) * dimension + (col + direction[1] * i);
+                    lines.add(line);
+                }
+            }
+        }
+        return lines.toArray(new int[lines.size()][]);
+    }
+
+    /**
+     * Build the per-cell index of the lines passing through each cell.
+     */
+    private static int[][] indexLines(int[][] lineCells, int cellCount)
+    {
+        int[] lineCounts = new int[cellCount];
+        for (int[] line : lineCells)
+        {
+            for (int cell : line)
+                lineCounts[cell]++;
+        }
+
+        int[][] cellLines = new int[cellCount][];
+        for (int cell = 0; cell < cellCount; cell++)
+        {
+            cellLines[cell] = new int[lineCounts[cell]];
+            lineCounts[cell] = 0;
+        }
+        for (int line = 0; line < lineCells.length; line++)
+        {
+            for (int cell : lineCells[line])
+                cellLines[cell][lineCounts[cell]++] = line;
+        }
+        return cellLines;
+    }
+
+    /**
+     * Order the cells by the number of lines through them, most first, then by cell index.
+     * On the 3 x 3 board this is center, corners, edges.
+     */
+    private int[] generateMoveOrder()
+    {
+        Integer[] cells = new Integer[mCellCount];
+        for (int cell = 0; cell < mCellCount; cell++)
+            cells[cell] = cell;
+
+        // Stable sort, so cells on the same number of lines stay in index order
+        Arrays.sort(cells, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer first, Integer second)
+            {
+                return mCellLines[second].length - mCellLines[first].length;
+            }
+        });
+
+        int[] moveOrder = new int[mCellCount];
+        for (int i = 0; i < mCellCount; i++)
+            moveOrder[i] = cells[i];
+        return moveOrder;
+    }
+
+    /**
+     * Getter for one dimension (l or w) of the board.
+     *
+     * @return dimension
+     */
+    public int getDimension()
+    {
+        return mDimension;
+    }
+
+    /**
+     * Getter for the number of markers in a row needed to win.
+     *
+     * @return line length
+     */
+    public int getLineLength()
+    {
+        return mLineLength;
+    }
+
+    /**
+     * Getter for the number of cells on the board.
+     *
+     * @return cell count
+     */
+    public int getCellCount()
+    {
+        return mCellCount;
+    }
+
+    /**
+     * Getter for the number of longs needed for a bitset of all cells.
+     *
+     * @return word count
+     */
+    public int getWordCount()
+    {
+        return mWordCount;
+    }
+
+    /**
+     * Get the mask of the cells that exist in the last word of a bitset.
+     *
+     * @return mask word
+     */
+    public long getLastWordMask()
+    {
+        int lastWordCells = mCellCount - (mWordCount - 1) * Bits.WORD_SIZE;
+        return (lastWordCells == Bits.WORD_SIZE) ? -1L : (1L << lastWordCells) - 1;
+    }
+
+    /**
+     * Getter for the number of winning lines.
+     *
+     * @return line count
+     */
+    public int getLineCount()
+    {
+        return mLineCells.length;
+    }
+
+    /**
+     * Get the cells of a winning line.
+     *
+     * @param line
+     * @return cells, must not be modified
+     */
+    public int[] getLineCells(int line)
+    {
+        return mLineCells[line];
+    }
+
+    /**
+     * Get the winning lines passing through a cell.
+     *
+     * @param cell
+     * @return lines, must not be modified
+     */
+    public int[] getCellLines(int cell)
+    {
+        return mCellLines[cell];
+    }
+
+    /**
+     * Get one word of the mask of a winning line.
+     *
+     * @param line
+     * @param wordIndex
+     * @return mask word
+     */
+    public long getLineMask(int line, int wordIndex)
+    {
+        return mLineMasks[line * mWordCount + wordIndex];
+    }
+
+    /**
+     * Get one word of the mask of the cells next to a cell.
+     *
+     * @param cell
+     * @param wordIndex
+     * @return mask word
+     */
+    public long getNeighborMask(int cell, int wordIndex)
+    {
+        return mNeighborMasks[cell * mWordCount + wordIndex];
+    }
+
+    /**
+     * Get every cell, in the order the search should try them.
+     *
+     * @return cells, must not be modified
+     */
+    public int[] getMoveOrder()
+    {
+        return mMoveOrder;
+    }
+
+    /**
+     * Get the position of a cell in the move order, lower ranks are tried first.
+     *
+     * @param cell
+     * @return rank
+     */
+    public int getMoveRank(int cell)
+    {
+        return mMoveRanks[cell];
+    }
+
+    /**
+     * Check if the board is too large to search every empty cell, in which case only cells next
+     * to existing markers are considered.
+     *
+     * @return true if moves are restricted to the neighborhood of existing markers
+     */
+    public boolean isMoveNeighborhoodRestricted()
+    {
+        return mCellCount > FULL_WIDTH_CELL_LIMIT;
+    }
+
+    /**
+     * Getter for the rotations and reflections of the board.
+     *
+     * @return symmetry
+     */
+    public BoardSymmetry getSymmetry()
+    {
+        return mSymmetry;
+    }
+
+    /**
+     * Getter for the hashing keys of the board.
+     *
+     * @return Zobrist keys
+     */
+    public Zobrist getZobrist()
+    {
+        return mZobrist;
+    }
+
+    /**
+     * Check if a player's markers complete any winning line.
+     *
+     * @param words cells holding the player's markers
+     * @return true if a line is complete
+     */
+    public boolean containsLine(long[] words)
+    {
+        for (int line = 0; line < mLineCells.length; line++)
+        {
+            if (isLineComplete(words, line))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a player's markers complete a winning line through a cell, e.g. the cell just
+     * played. Only the lines through the cell are checked.
+     *
+     * @param words cells holding the player's markers
+     * @param cell
+     * @return true if a line through the cell is complete
+     */
+    public boolean containsLineThrough(long[] words, int cell)
+    {
+        for (int line : mCellLines[cell])
+        {
+            if (isLineComplete(words, line))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Check if a player's markers cover every cell of a line.
+     */
+    private boolean isLineComplete(long[] words, int line)
+    {
+        int offset = line * mWordCount;
+        for (int i = 0; i < mWordCount; i++)
+        {
+            long mask = mLineMasks[offset + i];
+            if ((words[i] & mask) != mask)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the cell index for the given row and column.
+     *
+     * @param row
+     * @param col
+     * @return cell index
+     */
+    public int toCell(int row, int col)
+    {
+        return row * mDimension + col;
+    }
+
+    /**
+     * Get the row of a cell.
+     *
+     * @param cell
+     * @return row
+     */
+    public int getRow(int cell)
+    {
+        return cell / mDimension;
+    }
+
+    /**
+     * Get the column of a cell.
+     *
+     * @param cell
+     * @return column
+     */
+    public int getCol(int cell)
+    {
+        return cell % mDimension;
+    }
+
+    /**
+     * Check if a row and column are on the board.
+     */
+    private boolean isOnBoard(int row, int col)
+    {
+        return row >= 0 && row < mDimension && col >= 0 && col < mDimension;
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof BoardGeometry))
+            return false;
+        BoardGeometry geometry = (BoardGeometry) other;
+        return mDimension == geometry.mDimension && mLineLength == geometry.mLineLength;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return mDimension * 31 + mLineLength;
+    }
+
+    @Override
+    public String toString()
+    {
+        return mDimension + "x" + mDimension + "/" + mLineLength;
+    }
+}
@@ -0,0 +1,132 @@
+package com.aklopp.tictactoe;
+
+/**
+ * The 8 symmetries of a square board (4 rotations and 4 reflections).
+ * Positions that map onto each other under a symmetry have the same game-theoretic value,
+ * so the AI only needs to analyse one of them.
+ */
+public final class BoardSymmetry
+{
+    /**
+     * The number of symmetries of a square board.
+     */
+    public static final int SYMMETRY_COUNT = 8;
+
+    /**
+     * The identity symmetry, leaves every cell in place.
+     */
+    public static final int IDENTITY = 0;
+
+    /**
+     * For each symmetry, the cell every cell is moved to.
+     */
+    private final int[][] mCellMaps;
+
+    /**
+     * For each symmetry, the symmetry that undoes it.
+     */
+    private final int[] mInverses = new int[SYMMETRY_COUNT];
+
+    /**
+     * Constructor
+     *
+     * @param dimension one dimension (l or w) of the board
+     */
+    public BoardSymmetry(int dimension)
+    {
+        mCellMaps = new int[SYMMETRY_COUNT][dimension * dimension];
+
+        int last = dimension - 1;
+        for (int row = 0; row < dimension; row++)
+        {
+            for (int col = 0; col < dimension; col++)
+            {
+                int cell = row * dimension + col;
+                mCellMaps[0][cell] = cell;                                    // identity
+                mCellMaps[1][cell] = col * dimension + (last - row);          // rotate 90
+                mCellMaps[2][cell] = (last - row) * dimension + (last - col); // rotate 180
+                mCellMaps[3][cell] = (last - col) * dimension + row;          // rotate 270
+                mCellMaps[4][cell] = row * dimension + (last - col);          // mirror left-right
+                mCellMaps[5][cell] = (last - row) * dimension + col;          // mirror top-bottom
+                mCellMaps[6][cell] = col * dimension + row;                   // main diagonal
+                mCellMaps[7][cell] = (last - col) * dimension + (last - row); // anti-diagonal
+            }
+        }
+
+        for (int symmetry = 0; symmetry < SYMMETRY_COUNT; symmetry++)
+        {
+            for (int inverse = 0; inverse < SYMMETRY_COUNT; inverse++)
+            {
+                if (isIdentity(inverse, symmetry, dimension))
+                    mInverses[symmetry] = inverse;
+            }
+        }
+    }
+
+    /**
+     * Get the cell the given cell moves to under a symmetry.
+     *
+     * @param symmetry
+     * @param cell
+     * @return mapped cell
+     */
+    public int mapCell(int symmetry, int cell)
+    {
+        return mCellMaps[symmetry][cell];
+    }
+
+    /**
+     * Get the symmetry that undoes the given one.
+     *
+     * @param symmetry
+     * @return inverse symmetry
+     */
+    public int inverse(int symmetry)
+    {
+        return mInverses[symmetry];
+    }
+
+    /**
+     * Check whether a symmetry maps a position onto itself.
+     *
+     * @param symmetry
+     * @param xWords   cells holding an X marker
+     * @param oWords   cells holding an O marker
+     * @return true if the position is unchanged by the symmetry
+     */
+    public boolean isPreserved(int symmetry, long[] xWords, long[] oWords)
+    {
+        return isPreserved(symmetry, xWords) && isPreserved(symmetry, oWords);
+    }
+
+    /**
+     * Check whether a symmetry maps one player's markers onto themselves.
+     */
+    private boolean isPreserved(int symmetry, long[] words)
+    {
+        int[] cellMap = mCellMaps[symmetry];
+        for (int i = 0; i < words.length; i++)
+        {
+            for (long bits = words[i]; bits != 0; bits &= bits - 1)
+            {
+                int cell = i * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits);
+                if (!Bits.isSet(words, cellMap[cell]))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check whether applying one symmetry after the other leaves every cell in place.
+     */
+    private boolean isIdentity(int second, int first, int dimension)
+    {
+        for (int cell = 0; cell < dimension * dimension; cell++)
+        {
+            if (mCellMaps[second][mCellMaps[first][cell]] != cell)
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,19 @@
+package com.aklopp.tictactoe;
+
+/**
+ * Testing purposes - dumb player. Takes the first empty spot on the board.
+ */
+public class FirstEmptyStrategy implements MoveStrategy
+{
+    @Override
+    public int selectMove(Position position)
+    {
+        // Go in first untaken space
+        for (int cell = 0; cell < position.getGeometry().getCellCount(); cell++)
+        {
+            if (null == position.getPlayerAt(cell))
+                return cell;
+        }
+        return GameAI.NO_MOVE;
+    }
+}
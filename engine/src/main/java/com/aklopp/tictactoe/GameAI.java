@@ -0,0 +1,1241 @@
+package com.aklopp.tictactoe;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The AI that makes moves against the player.
+ * Created by Allison on 6/5/2015.
+ */
+public class GameAI implements MoveStrategy
+{
+    /**
+     * Search depth that plays every line out to the end of the game.
+     */
+    public static final int UNLIMITED_DEPTH = Integer.MAX_VALUE;
+
+    /**
+     * Search depth used on boards larger than 3 x 3, which are too big to search to the end.
+     */
+    public static final int DEFAULT_LARGE_BOARD_DEPTH = 4;
+
+    /**
+     * Returned in place of a cell when no move is available.
+     */
+    public static final int NO_MOVE = -1;
+
+    /**
+     * Score of a won game. Wins found closer to the root score higher, so the AI prefers the
+     * fastest win and the slowest loss. Must stay above any heuristic score.
+     */
+    private static final int WIN_SCORE = 1000000;
+
+    /**
+     * Scores beyond this are wins or losses rather than heuristic scores.
+     */
+    private static final int WIN_THRESHOLD = WIN_SCORE / 2;
+
+    /**
+     * The score of a line only grows up to this value, however many markers it holds.
+     */
+    private static final int MAX_LINE_SCORE = 100000;
+
+    /**
+     * The search checks for a stop request every STOP_CHECK_MASK + 1 nodes.
+     */
+    private static final int STOP_CHECK_MASK = 0xFF;
+
+    /**
+     * The transposition table holds 2^TABLE_SIZE_BITS entries, comfortably more than the number
+     * of legal 3 x 3 positions.
+     */
+    private static final int TABLE_SIZE_BITS = 14;
+
+    /**
+     * Transposition table size used on boards larger than 3 x 3.
+     */
+    private static final int LARGE_BOARD_TABLE_SIZE_BITS = 18;
+
+    /**
+     * Boards with at least this many cells search on every core by default.
+     */
+    private static final int PARALLEL_SEARCH_CELL_COUNT = 25;
+
+    /**
+     * The threat-space search run before the main search looks this many of its own moves
+     * ahead, and visits at most THREAT_SEARCH_NODE_LIMIT positions.
+     */
+    private static final int THREAT_SEARCH_DEPTH = 8;
+    private static final long THREAT_SEARCH_NODE_LIMIT = 20000;
+
+    /**
+     * The rules of the board the AI plays on.
+     */
+    private final BoardGeometry mGeometry;
+
+    /**
+     * Heuristic score of a line for X, indexed by xCount * (lineLength + 1) + oCount.
+     */
+    private final int[] mLineValues;
+
+    /**
+     * Determines which player the game AI will play as.
+     */
+    private Player mAIPlayer;
+
+    /**
+     * Determines which player the user will play as.
+     */
+    private Player mUserPlayer;
+
+    /**
+     * Determines how many moves ahead the AI looks when deciding where to play next.
+     * Positions at the cutoff are scored with the heuristic in getScore.
+     */
+    private int mMaxDepth;
+
+    /**
+     * Limits on the search when the AI is used as a MoveStrategy.
+     */
+    private SearchBudget mBudget = SearchBudget.UNLIMITED;
+
+    /**
+     * The number of threads searching each move.
+     */
+    private int mThreadCount;
+
+    /**
+     * The number of positions visited while selecting the last move, over all threads.
+     */
+    private long mNodeCount;
+
+    /**
+     * Solved best moves for every 3 x 3 position.
+     */
+    private final PerfectPlayTable mPerfectPlayTable;
+
+    /**
+     * Results of earlier searches, kept across moves and games and shared by all threads.
+     */
+    private final TranspositionTable mTranspositionTable;
+
+    /**
+     * Stats of every move selected, updated once per move.
+     */
+    private final SearchMetrics mMetrics = new SearchMetrics();
+
+    /**
+     * The search run on the calling thread, whose result is played.
+     */
+    private final Searcher mSearcher;
+
+    /**
+     * Helper threads stop after this long without a search, so an AI that is dropped without
+     * close doesn't keep them alive.
+     */
+    private static final long HELPER_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Searches run on helper threads, which only fill the transposition table for the main
+     * search. Created with the helper executor.
+     */
+    private Searcher[] mHelpers;
+
+    /**
+     * Runs the helper searches, null until the first search with more than one thread.
+     * Guarded by the AI.
+     */
+    private ExecutorService mHelperExecutor;
+
+    /**
+     * True once close has been called, after which no helper threads are started. Guarded by
+     * the AI.
+     */
+    private boolean mIsClosed;
+
+    /**
+     * The number of stop requests so far, incremented from any thread. A search stops once it
+     * differs from the stop token the search was started with.
+     */
+    private final AtomicInteger mStopCount = new AtomicInteger();
+
+    /**
+     * The stop token of the search in progress.
+     */
+    private int mStopToken;
+
+    /**
+     * Set once the main search is done to stop the helper searches.
+     */
+    private volatile boolean mHelperStopRequested;
+
+    /**
+     * System.nanoTime() at which the search in progress must stop, Long.MAX_VALUE for no limit.
+     */
+    private long mDeadlineNanos;
+
+    /**
+     * Node count at which each search thread must stop, Long.MAX_VALUE for no limit.
+     */
+    private long mNodeLimit;
+
+    /**
+     * The deepest search completed while selecting the last move.
+     */
+    private int mCompletedDepth;
+
+    /**
+     * Constructor for the 3 x 3 board.
+     */
+    public GameAI()
+    {
+        this(BoardGeometry.STANDARD);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param geometry the board the AI plays on
+     */
+    public GameAI(BoardGeometry geometry)
+    {
+        mGeometry = geometry;
+        mLineValues = createLineValues(geometry.getLineLength());
+        mSearcher = new Searcher(0);
+
+        if (BoardGeometry.STANDARD.equals(geometry))
+        {
+            mPerfectPlayTable = PerfectPlayTable.getInstance();
+            mTranspositionTable = new TranspositionTable(TABLE_SIZE_BITS);
+            mMaxDepth = UNLIMITED_DEPTH;
+        } else
+        {
+            mPerfectPlayTable = null;
+            mTranspositionTable = new TranspositionTable(LARGE_BOARD_TABLE_SIZE_BITS);
+            mMaxDepth = DEFAULT_LARGE_BOARD_DEPTH;
+        }
+
+        mThreadCount = (geometry.getCellCount() >= PARALLEL_SEARCH_CELL_COUNT)
+                ? Runtime.getRuntime().availableProcessors() : 1;
+    }
+
+    /**
+     * Sets the player for the AI, the user plays the opponent.
+     *
+     * @param player
+     */
+    public void setPlayer(Player player)
+    {
+        this.mAIPlayer = player;
+        this.mUserPlayer = player.getOpponent();
+    }
+
+    /**
+     * Getter for the player the AI plays as.
+     *
+     * @return AI player
+     */
+    public Player getPlayer()
+    {
+        return mAIPlayer;
+    }
+
+    /**
+     * Getter for the rules of the board the AI plays on.
+     *
+     * @return geometry
+     */
+    public BoardGeometry getGeometry()
+    {
+        return mGeometry;
+    }
+
+    /**
+     * Sets how many moves ahead the AI searches. 3 x 3 games are searched to the end by default,
+     * larger boards to DEFAULT_LARGE_BOARD_DEPTH.
+     *
+     * @param maxDepth number of moves, or UNLIMITED_DEPTH
+     */
+    public void setMaxDepth(int maxDepth)
+    {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Search depth must be at least 1: " + maxDepth);
+        this.mMaxDepth = maxDepth;
+    }
+
+    /**
+     * Getter for how many moves ahead the AI searches.
+     *
+     * @return number of moves, or UNLIMITED_DEPTH
+     */
+    public int getMaxDepth()
+    {
+        return mMaxDepth;
+    }
+
+    /**
+     * Sets the limits on the search used by selectMove.
+     *
+     * @param budget
+     */
+    public void setBudget(SearchBudget budget)
+    {
+        this.mBudget = budget;
+    }
+
+    /**
+     * Getter for the limits on the search used by selectMove.
+     *
+     * @return budget
+     */
+    public SearchBudget getBudget()
+    {
+        return mBudget;
+    }
+
+    /**
+     * Sets how many threads search each move. With more than one, the extra threads search the
+     * same position in a different order and share what they find through the transposition
+     * table (Lazy SMP), so the search on the calling thread finishes sooner. Boards of 5 x 5 and
+     * larger use every core by default, smaller boards one thread.
+     *
+     * @param threadCount
+     */
+    public void setThreadCount(int threadCount)
+    {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+
+        synchronized (this)
+        {
+            if (threadCount != mThreadCount && null != mHelperExecutor)
+            {
+                mHelperExecutor.shutdown();
+                mHelperExecutor = null;
+                mHelpers = null;
+            }
+        }
+        this.mThreadCount = threadCount;
+    }
+
+    /**
+     * Getter for how many threads search each move.
+     *
+     * @return thread count
+     */
+    public int getThreadCount()
+    {
+        return mThreadCount;
+    }
+
+    /**
+     * Get the number of positions visited while selecting the last move, over all threads.
+     *
+     * @return node count
+     */
+    public long getNodeCount()
+    {
+        return mNodeCount;
+    }
+
+    /**
+     * Get the stats of the last move selected, and the totals and distributions of every move
+     * selected so far. May be read from any thread.
+     *
+     * @return metrics
+     */
+    public SearchMetrics getMetrics()
+    {
+        return mMetrics;
+    }
+
+    /**
+     * Get the stats of the last move selected.
+     *
+     * @return stats, null if no move was selected yet
+     */
+    public SearchStats getLastSearchStats()
+    {
+        return mMetrics.getLastStats();
+    }
+
+    /**
+     * Get the deepest search completed while selecting the last move, 0 if the move came from
+     * the solved table or no search completed within the budget.
+     *
+     * @return number of moves searched
+     */
+    public int getCompletedDepth()
+    {
+        return mCompletedDepth;
+    }
+
+    /**
+     * Get the transposition table used by the search, e.g. to read its hit and miss counts.
+     *
+     * @return transposition table
+     */
+    public TranspositionTable getTranspositionTable()
+    {
+        return mTranspositionTable;
+    }
+
+    /**
+     * Stop the search in progress, if any, and every search started with a stop token taken
+     * before this call, even one that has not started yet. May be called from any thread;
+     * makeMove then returns shortly after with the best move found so far.
+     */
+    public void stop()
+    {
+        mStopCount.incrementAndGet();
+    }
+
+    /**
+     * Stop the helper threads. Call once the AI is no longer needed, from any thread. A search
+     * in progress still finishes, and later searches run on the calling thread only.
+     * Idle helper threads also stop on their own after HELPER_KEEP_ALIVE_SECONDS.
+     */
+    public synchronized void close()
+    {
+        mIsClosed = true;
+        if (null != mHelperExecutor)
+        {
+            mHelperExecutor.shutdown();
+            mHelperExecutor = null;
+        }
+    }
+
+    /**
+     * Get the stop token for a search about to be handed to another thread. Passed to
+     * makeMove, it makes a stop() that lands before that thread starts searching still stop
+     * the search.
+     *
+     * @return stop token
+     */
+    public int getStopToken()
+    {
+        return mStopCount.get();
+    }
+
+    /**
+     * Select a move for the AI on the given position, searching to the maximum depth. The
+     * search only reads the position, so it may run on a background thread while the board is
+     * shown on the UI thread.
+     *
+     * @param position the pre-AI-move game board condition
+     * @return the cell the AI plays, NO_MOVE if the game is already over or the search was
+     * stopped before finding a move
+     */
+    public int makeMove(Position position)
+    {
+        return makeMove(position, SearchBudget.UNLIMITED);
+    }
+
+    /**
+     * Play as the player to move and select a move with the search budget. Used when the AI
+     * plays itself or another strategy.
+     *
+     * @param position a position that is not game over
+     * @return the cell the AI plays
+     */
+    @Override
+    public int selectMove(Position position)
+    {
+        setPlayer(position.getPlayerToMove());
+        return makeMove(position, mBudget);
+    }
+
+    /**
+     * Select a move for the AI on the given position within a time or node budget.
+     * With a limited budget the search is deepened one move at a time, up to the maximum depth,
+     * and the best move of the deepest completed search is played, so the move is ready soon
+     * after the budget runs out whatever the board size. The budget is checked every
+     * STOP_CHECK_MASK + 1 nodes, and a node limit applies to each thread.
+     *
+     * @param position the pre-AI-move game board condition
+     * @param budget   limits on the search
+     * @return the cell the AI plays, NO_MOVE if the game is already over
+     */
+    public int makeMove(Position position, SearchBudget budget)
+    {
+        return makeMove(position, budget, getStopToken());
+    }
+
+    /**
+     * Select a move for the AI within a budget, stopping early if stop() was called after the
+     * stop token was taken.
+     *
+     * @param position  the pre-AI-move game board condition
+     * @param budget    limits on the search
+     * @param stopToken from getStopToken, taken when the search was requested
+     * @return the cell the AI plays, NO_MOVE if the game is already over
+     */
+    public int makeMove(Position position, SearchBudget budget, int stopToken)
+    {
+        long startNanos = System.nanoTime();
+        mNodeCount = 0;
+        mCompletedDepth = 0;
+        mStopToken = stopToken;
+        mHelperStopRequested = false;
+
+        // A depth cap deliberately weakens the AI, so only look up perfect play without one
+        if (mMaxDepth == UNLIMITED_DEPTH && null != mPerfectPlayTable)
+        {
+            int solvedMove = mPerfectPlayTable.getBestMove(position);
+            if (NO_MOVE != solvedMove)
+            {
+                mMetrics.record(new SearchStats(true, System.nanoTime() - startNanos, 0, 0, 0, 0, 0, 0, 0));
+                return solvedMove;
+            }
+        }
+
+        if (position.isGameOver())
+            return NO_MOVE;
+
+        mDeadlineNanos = (budget.getTimeLimitNanos() == 0)
+                ? Long.MAX_VALUE : System.nanoTime() + budget.getTimeLimitNanos();
+        mNodeLimit = (budget.getNodeLimit() == 0) ? Long.MAX_VALUE : budget.getNodeLimit();
+
+        // A move the threats on the board decide is played without starting the helpers
+        mSearcher.setPosition(position);
+        int bestPossibleMove = mSearcher.getDecidedMove();
+        Future<?>[] helperResults = null;
+        if (NO_MOVE == bestPossibleMove)
+        {
+            helperResults = startHelpers(position);
+            bestPossibleMove = mSearcher.search(budget.isLimited());
+        }
+        mNodeCount = mSearcher.mNodeCount;
+        mCompletedDepth = mSearcher.mCompletedDepth;
+        stopHelpers(helperResults);
+
+        recordSearch(startNanos, null != helperResults);
+        return bestPossibleMove;
+    }
+
+    /**
+     * Add the stats of the search that just selected a move to the metrics.
+     *
+     * @param startNanos      System.nanoTime() when the search started
+     * @param withHelpers true if the helpers searched too
+     */
+    private void recordSearch(long startNanos, boolean withHelpers)
+    {
+        long expandedNodeCount = mSearcher.mExpandedNodeCount;
+        long cutoffCount = mSearcher.mCutoffCount;
+        long tableProbeCount = mSearcher.mTableProbeCount;
+        long tableHitCount = mSearcher.mTableHitCount;
+        if (withHelpers)
+        {
+            // The helpers have stopped, so their counters are safe to read
+            for (Searcher helper : mHelpers)
+            {
+                expandedNodeCount += helper.mExpandedNodeCount;
+                cutoffCount += helper.mCutoffCount;
+                tableProbeCount += helper.mTableProbeCount;
+                tableHitCount += helper.mTableHitCount;
+            }
+        }
+
+        mMetrics.record(new SearchStats(false, System.nanoTime() - startNanos, withHelpers ? mThreadCount : 1,
+                mCompletedDepth, mNodeCount, expandedNodeCount, cutoffCount, tableProbeCount, tableHitCount));
+    }
+
+    /**
+     * Start the helper searches on the given position.
+     *
+     * @param position
+     * @return the pending helper searches, null if there are no helper threads
+     */
+    private Future<?>[] startHelpers(final Position position)
+    {
+        if (mThreadCount == 1)
+            return null;
+
+        // Submitted under the lock, so close can't shut the executor down in between
+        synchronized (this)
+        {
+            if (mIsClosed)
+                return null;
+
+            if (null == mHelperExecutor)
+            {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(mThreadCount - 1, mThreadCount - 1,
+                        HELPER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory()
+                        {
+                            @Override
+                            public Thread newThread(Runnable runnable)
+                            {
+                                Thread thread = new Thread(runnable, "GameAI helper");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                executor.allowCoreThreadTimeOut(true);
+                mHelperExecutor = executor;
+                mHelpers = new Searcher[mThreadCount - 1];
+                for (int i = 0; i < mHelpers.length; i++)
+                    mHelpers[i] = new Searcher(i + 1);
+            }
+
+            Future<?>[] helperResults = new Future<?>[mHelpers.length];
+            for (int i = 0; i < mHelpers.length; i++)
+            {
+                final Searcher helper = mHelpers[i];
+                helperResults[i] = mHelperExecutor.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        helper.setPosition(position);
+                        helper.search(true);
+                    }
+                });
+            }
+            return helperResults;
+        }
+    }
+
+    /**
+     * Stop the helper searches and wait for them to finish, so the next search starts with
+     * every thread idle.
+     *
+     * @param helperResults the pending helper searches, null if there are none
+     */
+    private void stopHelpers(Future<?>[] helperResults)
+    {
+        if (null == helperResults)
+            return;
+
+        mHelperStopRequested = true;
+        boolean isInterrupted = false;
+        for (int i = 0; i < helperResults.length; i++)
+        {
+            while (true)
+            {
+                try
+                {
+                    helperResults[i].get();
+                    break;
+                } catch (InterruptedException e)
+                {
+                    // The helpers stop soon anyway, keep waiting and restore the flag afterwards
+                    isInterrupted = true;
+                } catch (ExecutionException e)
+                {
+                    throw new IllegalStateException("Helper search failed", e.getCause());
+                }
+            }
+            mNodeCount += mHelpers[i].mNodeCount;
+        }
+
+        if (isInterrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Check if the game is over.
+     *
+     * @param position
+     * @return true if game is over, false otherwise
+     */
+    public boolean isGameOver(Position position)
+    {
+        return position.isGameOver();
+    }
+
+    /**
+     * Get the outcome of the completed game
+     *
+     * @param position
+     * @return outcome of the game
+     */
+    public Outcome getGameOverOutcome(Position position)
+    {
+        Outcome gameOutcome = Outcome.TIE;
+
+        // Check if the user has won
+        if (position.hasWon(mUserPlayer))
+            gameOutcome = Outcome.WIN;
+
+        // Check if the AI has won
+        if (position.hasWon(mAIPlayer))
+            gameOutcome = Outcome.LOSE;
+
+        return gameOutcome;
+    }
+
+    /**
+     * Convert a win or loss score, which depends on the distance from the root, to one that
+     * depends on the distance from the position so it can be reused from any root.
+     *
+     * @param score score relative to the root
+     * @param ply   number of moves made since the root
+     * @return score relative to the position
+     */
+    private static int toTableScore(int score, int ply)
+    {
+        if (score > WIN_THRESHOLD)
+            return score + ply;
+        if (score < -WIN_THRESHOLD)
+            return score - ply;
+        return score;
+    }
+
+    /**
+     * Convert a score stored in the transposition table back to one relative to the root.
+     *
+     * @param score score relative to the position
+     * @param ply   number of moves made since the root
+     * @return score relative to the root
+     */
+    private static int fromTableScore(int score, int ply)
+    {
+        if (score > WIN_THRESHOLD)
+            return score - ply;
+        if (score < -WIN_THRESHOLD)
+            return score + ply;
+        return score;
+    }
+
+    /**
+     * Get the heuristic score of the given position from the AI's point of view.
+     * Must not be called while a move is being selected.
+     *
+     * @param position
+     * @return score
+     */
+    public int getScore(Position position)
+    {
+        mSearcher.mBoard.setPosition(position);
+        return evaluate(mSearcher.mBoard, mAIPlayer);
+    }
+
+    /**
+     * Set the board of the main search, for benchmarking getPossibleMoves.
+     * Must not be called while a move is being selected.
+     *
+     * @param position
+     */
+    void setSearchPosition(Position position)
+    {
+        mSearcher.mBoard.setPosition(position);
+    }
+
+    /**
+     * Generate the moves to search on the board set with setSearchPosition, for benchmarking.
+     *
+     * @return the number of moves generated
+     */
+    int getPossibleMoves()
+    {
+        return mSearcher.getPossibleMoves(mSearcher.mBoard, 0, NO_MOVE);
+    }
+
+    /**
+     * Get the heuristic score of the board from the given player's point of view. The board
+     * keeps the score up to date as moves are made, so this is a field read. Kept within
+     * WIN_THRESHOLD so it is never mistaken for a win.
+     *
+     * @param board
+     * @param player
+     * @return score
+     */
+    private static int evaluate(SearchBoard board, Player player)
+    {
+        long score = (player == Player.X) ? board.getScore() : -board.getScore();
+        return (int) Math.max(-(WIN_THRESHOLD - 1), Math.min(WIN_THRESHOLD - 1, score));
+    }
+
+    /**
+     * Build the lookup table of heuristic line scores for X, indexed by
+     * xCount * (lineLength + 1) + oCount. A line holding only one player's markers is worth
+     * 1, 10, 100, ... to that player, and a line holding both can no longer be won by anybody.
+     *
+     * @param lineLength number of markers in a row needed to win
+     * @return line values
+     */
+    private static int[] createLineValues(int lineLength)
+    {
+        int[] lineScores = new int[lineLength + 1];
+        for (int count = 1; count <= lineLength; count++)
+            lineScores[count] = (count == 1) ? 1 : Math.min(lineScores[count - 1] * 10, MAX_LINE_SCORE);
+
+        int[] lineValues = new int[(lineLength + 1) * (lineLength + 1)];
+        for (int xCount = 0; xCount <= lineLength; xCount++)
+        {
+            for (int oCount = 0; oCount <= lineLength; oCount++)
+            {
+                if (xCount == 0 || oCount == 0)
+                    lineValues[xCount * (lineLength + 1) + oCount] = lineScores[xCount] - lineScores[oCount];
+            }
+        }
+        return lineValues;
+    }
+
+    /**
+     * The search state of one thread: its own board, move buffers and counters. Searchers only
+     * share the transposition table and the stop conditions of the GameAI.
+     */
+    private final class Searcher
+    {
+        /**
+         * 0 for the main search, 1 and up for the helpers.
+         */
+        private final int mIndex;
+
+        /**
+         * The board the search makes and undoes its moves on.
+         */
+        private final SearchBoard mBoard;
+
+        /**
+         * Candidate cell bitsets for each ply of the search, reused so the search does not
+         * allocate.
+         */
+        private final long[][] mCandidateBuffers;
+
+        /**
+         * The moves to search at each ply, reused so the search does not allocate.
+         */
+        private final int[][] mMoveBuffers;
+
+        /**
+         * Finds forced wins and the replies to threats on boards too large to search every
+         * move. Only the main search has one, null on smaller boards and for the helpers.
+         */
+        private final ThreatSearch mThreatSearch;
+
+        /**
+         * The number of positions visited by the search in progress.
+         */
+        private long mNodeCount;
+
+        /**
+         * The number of positions whose moves were searched, and of those the number cut off
+         * before searching every move, by the search in progress.
+         */
+        private long mExpandedNodeCount;
+        private long mCutoffCount;
+
+        /**
+         * The number of transposition table lookups by the search in progress, and of those the
+         * number that found their position. Kept per searcher so threads sharing the table do
+         * not write to the same counters.
+         */
+        private long mTableProbeCount;
+        private long mTableHitCount;
+
+        /**
+         * True once the search in progress has seen a stop request or run out of budget and is
+         * unwinding.
+         */
+        private boolean mAborted;
+
+        /**
+         * Score of the best move found by the last completed root search.
+         */
+        private int mBestScore;
+
+        /**
+         * The deepest search completed by the search in progress.
+         */
+        private int mCompletedDepth;
+
+        /**
+         * Constructor
+         *
+         * @param index 0 for the main search, 1 and up for the helpers
+         */
+        Searcher(int index)
+        {
+            mIndex = index;
+            mBoard = new SearchBoard(mGeometry, mLineValues);
+
+            // One buffer per ply, the search never goes deeper than the number of cells
+            mCandidateBuffers = new long[mGeometry.getCellCount() + 1][mGeometry.getWordCount()];
+            mMoveBuffers = new int[mGeometry.getCellCount() + 1][mGeometry.getCellCount()];
+            mThreatSearch = (index == 0 && mGeometry.isMoveNeighborhoodRestricted())
+                    ? new ThreatSearch(mBoard, THREAT_SEARCH_DEPTH) : null;
+        }
+
+        /**
+         * Set the position to search, which is not game over, and reset the counts.
+         *
+         * @param position
+         */
+        void setPosition(Position position)
+        {
+            mNodeCount = 0;
+            mExpandedNodeCount = 0;
+            mCutoffCount = 0;
+            mTableProbeCount = 0;
+            mTableHitCount = 0;
+            mCompletedDepth = 0;
+            mAborted = false;
+            mBoard.setPosition(position);
+        }
+
+        /**
+         * Find a move the position decides without a search: a win, the only block of an
+         * opponent's four or, for the main search, the first move of a forced win.
+         *
+         * @return the move, NO_MOVE if the position has to be searched
+         */
+        int getDecidedMove()
+        {
+            int move = getGameWinningMove(mBoard);
+            if (NO_MOVE == move && null != mThreatSearch)
+                move = getThreatMove(mBoard);
+            return move;
+        }
+
+        /**
+         * Search the position set by setPosition.
+         *
+         * @param deepen true to deepen the search one move at a time, false to search to the
+         *               maximum depth at once
+         * @return best move found
+         */
+        int search(boolean deepen)
+        {
+            if (deepen)
+                return deepenSearch(mBoard);
+
+            int bestPossibleMove = findBestMove(mBoard, mMaxDepth, NO_MOVE);
+            if (!mAborted)
+                mCompletedDepth = Math.min(mMaxDepth, mBoard.getEmptyCount());
+            return bestPossibleMove;
+        }
+
+        /**
+         * Search one move deeper at a time until the budget or the maximum depth is reached, or
+         * the outcome of the game is known. Every other helper starts one move deeper, so the
+         * threads are spread over two depths.
+         *
+         * @param board
+         * @return best move of the deepest completed search
+         */
+        private int deepenSearch(SearchBoard board)
+        {
+            int maxDepth = Math.min(mMaxDepth, board.getEmptyCount());
+            int bestMove = NO_MOVE;
+
+            for (int depth = 1 + (mIndex & 1); depth <= maxDepth; depth++)
+            {
+                // Try the previous best move first, the search of the other moves is then cheaper
+                int move = findBestMove(board, depth, bestMove);
+
+                // A cut short search still found this move better than the previous best
+                if (NO_MOVE != move)
+                    bestMove = move;
+                if (mAborted)
+                    break;
+
+                mCompletedDepth = depth;
+                if (Math.abs(mBestScore) > WIN_THRESHOLD)
+                    break;
+            }
+
+            // Out of budget before searching a single move, play the first one in move order
+            if (NO_MOVE == bestMove)
+                bestMove = mMoveBuffers[0][0];
+
+            return bestMove;
+        }
+
+        /**
+         * Check the possible moves to see if one is a game winning move.
+         *
+         * @param board
+         * @return first game winning move found, NO_MOVE if none found.
+         */
+        private int getGameWinningMove(SearchBoard board)
+        {
+            long[] winningMoves = mCandidateBuffers[0];
+            board.getWinningCells(board.getPlayerToMove(), winningMoves);
+
+            return Bits.getFirst(winningMoves);
+        }
+
+        /**
+         * Find a move the threats on the board decide: the only block of an opponent's four, or
+         * the first move of a forced win found by the threat-space search.
+         *
+         * @param board
+         * @return the move, NO_MOVE if the main search has to decide
+         */
+        private int getThreatMove(SearchBoard board)
+        {
+            long[] blocks = mCandidateBuffers[0];
+            if (board.getWinningCells(board.getPlayerToMove().getOpponent(), blocks) != 0)
+                return (Bits.count(blocks) == 1) ? Bits.getFirst(blocks) : NO_MOVE;
+
+            // Leave most of a small node budget to the main search
+            long nodeLimit = Math.min(THREAT_SEARCH_NODE_LIMIT, mNodeLimit / 2);
+            int move = mThreatSearch.findForcedWin(THREAT_SEARCH_DEPTH, nodeLimit, mDeadlineNanos);
+            mNodeCount += mThreatSearch.getNodeCount();
+            return move;
+        }
+
+        /**
+         * Find the best possible next move for the player to move and return it.
+         * If the search is cut short, the best of the moves searched completely is returned.
+         * Helpers start from a different root move each, so they fill different parts of the
+         * transposition table.
+         *
+         * @param board
+         * @param numOfNextMoves how many moves ahead to search
+         * @param firstMove      move to search first, NO_MOVE to use the transposition table's
+         * @return best available move, NO_MOVE if the search was cut short before any move was
+         * searched completely
+         */
+        private int findBestMove(SearchBoard board, int numOfNextMoves, int firstMove)
+        {
+            int alpha = -WIN_SCORE - 1;
+            int beta = WIN_SCORE + 1;
+            int bestMove = NO_MOVE;
+            int tableMove = (NO_MOVE != firstMove)
+                    ? firstMove : TranspositionTable.getMove(probeTable(board.getHash()));
+
+            mNodeCount++;
+            mExpandedNodeCount++;
+
+            int moveCount = getPossibleMoves(board, 0, tableMove);
+            int[] moves = mMoveBuffers[0];
+            int offset = mIndex % moveCount;
+            for (int i = 0; i < moveCount; i++)
+            {
+                int move = moves[(i + offset) % moveCount];
+                board.make(move);
+                int score = -negamax(board, numOfNextMoves - 1, 1, -beta, -alpha);
+                board.unmake();
+
+                if (mAborted)
+                    return bestMove;
+
+                if (score > alpha)
+                {
+                    alpha = score;
+                    bestMove = move;
+                }
+            }
+
+            mBestScore = alpha;
+            return bestMove;
+        }
+
+        /**
+         * Negamax search with alpha-beta pruning.
+         *
+         * @param board
+         * @param numOfNextMoves how many more moves to search before falling back to the heuristic
+         * @param ply            number of moves made since the root
+         * @param alpha          score the player to move is already guaranteed
+         * @param beta           score the opponent is already guaranteed, as seen by the player to move
+         * @return score of the position for the player to move
+         */
+        private int negamax(SearchBoard board, int numOfNextMoves, int ply, int alpha, int beta)
+        {
+            mNodeCount++;
+
+            // The score of an aborted search is never used
+            if ((mNodeCount & STOP_CHECK_MASK) == 0 && isOutOfBudget())
+                mAborted = true;
+            if (mAborted)
+                return 0;
+
+            // The previous move won the game
+            if (board.isLastMoveWin())
+                return -(WIN_SCORE - ply);
+
+            Player player = board.getPlayerToMove();
+
+            int emptyCount = board.getEmptyCount();
+            if (emptyCount == 0)
+                return 0;
+
+            // Take a win on this move if there is one
+            if (board.getWinningCells(player, null) != 0)
+                return WIN_SCORE - (ply + 1);
+
+            if (numOfNextMoves <= 0)
+                return evaluate(board, player);
+
+            // Searching past the last empty cell gives the same result, so store that depth instead
+            int depth = Math.min(numOfNextMoves, emptyCount);
+            long hash = board.getHash();
+            long entry = probeTable(hash);
+            int tableMove = TranspositionTable.getMove(entry);
+
+            if (entry != TranspositionTable.MISS && TranspositionTable.getDepth(entry) >= depth)
+            {
+                int tableScore = fromTableScore(TranspositionTable.getScore(entry), ply);
+                int bound = TranspositionTable.getBound(entry);
+
+                if (bound == TranspositionTable.BOUND_EXACT)
+                    return tableScore;
+                if (bound == TranspositionTable.BOUND_LOWER)
+                    alpha = Math.max(alpha, tableScore);
+                else
+                    beta = Math.min(beta, tableScore);
+
+                if (alpha >= beta)
+                    return tableScore;
+            }
+
+            int originalAlpha = alpha;
+            int bestMove = NO_MOVE;
+            mExpandedNodeCount++;
+
+            int moveCount = getPossibleMoves(board, ply, tableMove);
+            int[] moves = mMoveBuffers[ply];
+            for (int i = 0; i < moveCount; i++)
+            {
+                int move = moves[i];
+                board.make(move);
+                int score = -negamax(board, numOfNextMoves - 1, ply + 1, -beta, -alpha);
+                board.unmake();
+
+                // Don't store a partial result
+                if (mAborted)
+                    return 0;
+
+                if (score > alpha)
+                {
+                    alpha = score;
+                    bestMove = move;
+
+                    // The opponent will never allow this line
+                    if (alpha >= beta)
+                    {
+                        mCutoffCount++;
+                        break;
+                    }
+                }
+            }
+
+            int bound;
+            if (alpha >= beta)
+                bound = TranspositionTable.BOUND_LOWER;
+            else if (alpha <= originalAlpha)
+                bound = TranspositionTable.BOUND_UPPER;
+            else
+                bound = TranspositionTable.BOUND_EXACT;
+            mTranspositionTable.store(hash, depth, bound, bestMove, toTableScore(alpha, ply));
+
+            return alpha;
+        }
+
+        /**
+         * Look up a position in the shared transposition table, counting the lookup.
+         *
+         * @param hash
+         * @return the packed entry, TranspositionTable.MISS if not found
+         */
+        private long probeTable(long hash)
+        {
+            long entry = mTranspositionTable.probe(hash);
+            mTableProbeCount++;
+            if (entry != TranspositionTable.MISS)
+                mTableHitCount++;
+            return entry;
+        }
+
+        /**
+         * Check if the search has been asked to stop or has used up its budget. Helpers also
+         * stop once the main search is done.
+         *
+         * @return true if the search must stop
+         */
+        private boolean isOutOfBudget()
+        {
+            return mStopCount.get() != mStopToken
+                    || (mIndex != 0 && mHelperStopRequested)
+                    || mNodeCount >= mNodeLimit
+                    || System.nanoTime() >= mDeadlineNanos;
+        }
+
+        /**
+         * Get the moves worth searching on the board, in the order to search them.
+         * When the opponent threatens to win only the blocking cells are returned, since any
+         * other move loses on the next turn. On boards with a threat-space search a threatened
+         * double four likewise leaves only the cells that answer it. Moves leading to positions
+         * symmetric to an earlier move's are dropped; on the empty 3 x 3 board this leaves only
+         * a corner, an edge and the center. The move remembered by the transposition table comes first, then the
+         * geometry's move order. The moves are written to the buffer of the ply, nothing is
+         * allocated.
+         *
+         * @param board
+         * @param ply       number of moves made since the root
+         * @param tableMove the move stored in the transposition table, NO_MOVE if none
+         * @return the number of moves written to mMoveBuffers[ply]
+         */
+        private int getPossibleMoves(SearchBoard board, int ply, int tableMove)
+        {
+            long[] candidates = mCandidateBuffers[ply];
+            int[] moves = mMoveBuffers[ply];
+
+            Player opponent = board.getPlayerToMove().getOpponent();
+            if (board.getWinningCells(opponent, candidates) == 0
+                    && (null == mThreatSearch || !mThreatSearch.getDefensiveCells(opponent, candidates)))
+                board.getCandidateCells(candidates);
+
+            // Insert each candidate into the move list by its rank in the move order
+            int moveCount = 0;
+            for (int word = 0; word < candidates.length; word++)
+            {
+                for (long bits = candidates[word]; bits != 0; bits &= bits - 1)
+                {
+                    int move = word * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits);
+                    int rank = mGeometry.getMoveRank(move);
+                    int i = moveCount++;
+                    for (; i > 0 && mGeometry.getMoveRank(moves[i - 1]) > rank; i--)
+                        moves[i] = moves[i - 1];
+                    moves[i] = move;
+                }
+            }
+
+            // Move the table move to the front
+            if (tableMove != NO_MOVE && Bits.isSet(candidates, tableMove))
+            {
+                int i = 0;
+                while (moves[i] != tableMove)
+                    i++;
+                for (; i > 0; i--)
+                    moves[i] = moves[i - 1];
+                moves[0] = tableMove;
+            }
+
+            int symmetries = board.getPreservedSymmetries();
+            if (symmetries == 1 << BoardSymmetry.IDENTITY)
+                return moveCount;
+
+            BoardSymmetry symmetry = mGeometry.getSymmetry();
+            int keptCount = 0;
+            for (int i = 0; i < moveCount; i++)
+            {
+                int move = moves[i];
+                if (!Bits.isSet(candidates, move))
+                    continue;
+
+                moves[keptCount++] = move;
+
+                // Every cell this move maps to gives an equivalent position
+                for (int s = 0; s < BoardSymmetry.SYMMETRY_COUNT; s++)
+                {
+                    if ((symmetries & (1 << s)) != 0)
+                        Bits.clear(candidates, symmetry.mapCell(s, move));
+                }
+            }
+            return keptCount;
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package com.aklopp.tictactoe;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only file of game records, memory mapped so appending is a memory copy and a scan
+ * reads the records straight out of the page cache.
+ * The file starts with a header: a magic number, the format version, the end of the records
+ * and the number of records. The records follow back to back in their GameRecord binary form.
+ * The mapping grows by doubling, so the file may be longer than the records it holds.
+ * <p>
+ * The end of the records is only moved once a record is completely written, so a reader never
+ * sees part of a record. Writes reach the disk when the OS flushes the pages, or on flush.
+ */
+public final class GameLog implements Closeable, Iterable<GameRecord>
+{
+    /**
+     * "TTTL" at the start of every log file.
+     */
+    private static final int MAGIC = 0x5454544C;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Offsets of the header fields.
+     */
+    private static final int END_OFFSET = 8;
+    private static final int COUNT_OFFSET = 16;
+    private static final int HEADER_SIZE = 24;
+
+    /**
+     * Size of the mapping of a new log.
+     */
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private final RandomAccessFile mFile;
+    private final FileChannel mChannel;
+
+    /**
+     * The mapped file, replaced by a larger mapping when it fills up.
+     */
+    private MappedByteBuffer mBuffer;
+
+    /**
+     * Offset of the end of the last record.
+     */
+    private int mEnd;
+
+    /**
+     * Number of records in the log.
+     */
+    private long mRecordCount;
+
+    /**
+     * Constructor, creates the file if it doesn't exist.
+     *
+     * @param file
+     * @throws IOException if the file can't be mapped or is not a game log
+     */
+    public GameLog(File file) throws IOException
+    {
+        mFile = new RandomAccessFile(file, "rw");
+        mChannel = mFile.getChannel();
+        try
+        {
+            boolean isNew = mChannel.size() == 0;
+            mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(mChannel.size(), INITIAL_CAPACITY));
+            if (isNew)
+            {
+                mBuffer.putInt(0, MAGIC);
+                mBuffer.putInt(4, VERSION);
+                mEnd = HEADER_SIZE;
+                writeEnd();
+            }
+            else
+            {
+                if (mChannel.size() < HEADER_SIZE || mBuffer.getInt(0) != MAGIC || mBuffer.getInt(4) != VERSION)
+                    throw new IOException("Not a game log: " + file);
+                mEnd = (int) mBuffer.getLong(END_OFFSET);
+                mRecordCount = mBuffer.getLong(COUNT_OFFSET);
+            }
+        }
+        catch (IOException e)
+        {
+            mFile.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Add a record to the end of the log.
+     *
+     * @param record
+     * @throws IOException if the file can't grow
+     */
+    public synchronized void append(GameRecord record) throws IOException
+    {
+        int size = record.getEncodedSize();
+        if (mEnd + size > mBuffer.capacity())
+            grow(mEnd + size);
+
+        mBuffer.position(mEnd);
+        record.writeTo(mBuffer);
+        mEnd += size;
+        mRecordCount++;
+        writeEnd();
+    }
+
+    /**
+     * Get the number of records in the log.
+     *
+     * @return record count
+     */
+    public synchronized long getRecordCount()
+    {
+        return mRecordCount;
+    }
+
+    /**
+     * Write the appended records to the disk.
+     */
+    public synchronized void flush()
+    {
+        mBuffer.force();
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        mBuffer.force();
+        mFile.close();
+    }
+
+    /**
+     * Iterate over the records in the log when the iterator is created, in the order they were
+     * appended. Records appended later are not seen.
+     *
+     * @return iterator
+     */
+    @Override
+    public Iterator<GameRecord> iterator()
+    {
+        final ByteBuffer records;
+        final int end;
+        synchronized (this)
+        {
+            records = mBuffer.duplicate();
+            end = mEnd;
+        }
+        records.position(HEADER_SIZE);
+
+        return new Iterator<GameRecord>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return records.position() < end;
+            }
+
+            @Override
+            public GameRecord next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                return GameRecord.readFrom(records);
+            }
+
+            @Override
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Map a larger part of the file, at least doubling it.
+     */
+    private void grow(int minCapacity) throws IOException
+    {
+        long capacity = Math.max(2L * mBuffer.capacity(), minCapacity);
+        if (capacity > Integer.MAX_VALUE)
+            throw new IOException("Game log is full");
+        mBuffer = mChannel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Publish the end of the records and the record count in the header.
+     */
+    private void writeEnd()
+    {
+        mBuffer.putLong(COUNT_OFFSET, mRecordCount);
+        mBuffer.putLong(END_OFFSET, mEnd);
+    }
+}
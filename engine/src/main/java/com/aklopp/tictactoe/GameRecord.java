@@ -0,0 +1,305 @@
+package com.aklopp.tictactoe;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A completed game: its moves in order, the marker of the player it was recorded for and that
+ * player's outcome.
+ * <p>
+ * Records have a compact binary form that can be read back without knowing its length.
+ * The first byte holds the outcome in bits 0-1, the marker in bit 2 (set for O) and the format
+ * in bit 3:
+ * <ul>
+ * <li>3 x 3 board, bit 3 clear: the move count is in bits 4-7, followed by the moves packed two
+ * to a byte, 4 bits each, the earlier move in the low nibble. A full game takes 6 bytes.</li>
+ * <li>Any other board, bit 3 set: the dimension, the line length, the move count and the moves,
+ * each as an unsigned varint of 7 bits per byte, low bits first.</li>
+ * </ul>
+ */
+public final class GameRecord
+{
+    /**
+     * Header bits.
+     */
+    private static final int OUTCOME_MASK = 0x3;
+    private static final int MARKER_O = 1 << 2;
+    private static final int VARINT_FORMAT = 1 << 3;
+    private static final int MOVE_COUNT_SHIFT = 4;
+
+    /**
+     * Bytes in the longest varint of an int.
+     */
+    private static final int VARINT_MAX_BYTES = 5;
+
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    /**
+     * The board the game was played on.
+     */
+    private final BoardGeometry mGeometry;
+
+    /**
+     * The player the outcome is recorded for.
+     */
+    private final Player mMarker;
+
+    /**
+     * The outcome for mMarker.
+     */
+    private final Outcome mOutcome;
+
+    /**
+     * The cells played, X first.
+     */
+    private final int[] mMoves;
+
+    /**
+     * Constructor
+     *
+     * @param geometry
+     * @param marker   the player the outcome is recorded for
+     * @param outcome  the outcome for marker
+     * @param moves    the cells played in order, X first, copied
+     */
+    public GameRecord(BoardGeometry geometry, Player marker, Outcome outcome, int[] moves)
+    {
+        if (moves.length > geometry.getCellCount())
+            throw new IllegalArgumentException("More moves than cells: " + moves.length);
+        for (int move : moves)
+        {
+            if (move < 0 || move >= geometry.getCellCount())
+                throw new IllegalArgumentException("Cell out of range: " + move);
+        }
+
+        mGeometry = geometry;
+        mMarker = marker;
+        mOutcome = outcome;
+        mMoves = moves.clone();
+    }
+
+    /**
+     * Getter for the board the game was played on.
+     *
+     * @return geometry
+     */
+    public BoardGeometry getGeometry()
+    {
+        return mGeometry;
+    }
+
+    /**
+     * Getter for the player the outcome is recorded for.
+     *
+     * @return marker
+     */
+    public Player getMarker()
+    {
+        return mMarker;
+    }
+
+    /**
+     * Getter for the outcome of the game for the marker.
+     *
+     * @return outcome
+     */
+    public Outcome getOutcome()
+    {
+        return mOutcome;
+    }
+
+    /**
+     * Get the number of moves played.
+     *
+     * @return move count
+     */
+    public int getMoveCount()
+    {
+        return mMoves.length;
+    }
+
+    /**
+     * Get a move of the game.
+     *
+     * @param index 0 for the first move
+     * @return the cell played
+     */
+    public int getMove(int index)
+    {
+        return mMoves[index];
+    }
+
+    /**
+     * Get all the moves of the game.
+     *
+     * @return the cells played in order, a copy
+     */
+    public int[] getMoves()
+    {
+        return mMoves.clone();
+    }
+
+    /**
+     * Replay the game up to a move.
+     *
+     * @param moveCount number of moves to play
+     * @return the position after moveCount moves
+     */
+    public Position getPosition(int moveCount)
+    {
+        Position position = new Position(mGeometry);
+        for (int i = 0; i < moveCount; i++)
+            position = position.play(mMoves[i]);
+        return position;
+    }
+
+    /**
+     * Get the number of bytes writeTo will write.
+     *
+     * @return encoded size
+     */
+    public int getEncodedSize()
+    {
+        if (isNibbleFormat())
+            return 1 + (mMoves.length + 1) / 2;
+
+        int size = 1 + getVarintSize(mGeometry.getDimension()) + getVarintSize(mGeometry.getLineLength())
+                + getVarintSize(mMoves.length);
+        for (int move : mMoves)
+            size += getVarintSize(move);
+        return size;
+    }
+
+    /**
+     * Write the binary form of the record at the buffer's position, advancing it.
+     *
+     * @param buffer needs getEncodedSize() bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer)
+    {
+        int header = mOutcome.ordinal() | ((mMarker == Player.O) ? MARKER_O : 0);
+        if (isNibbleFormat())
+        {
+            buffer.put((byte) (header | (mMoves.length << MOVE_COUNT_SHIFT)));
+            for (int i = 0; i < mMoves.length; i += 2)
+            {
+                int high = (i + 1 < mMoves.length) ? mMoves[i + 1] : 0;
+                buffer.put((byte) (mMoves[i] | (high << 4)));
+            }
+            return;
+        }
+
+        buffer.put((byte) (header | VARINT_FORMAT));
+        putVarint(buffer, mGeometry.getDimension());
+        putVarint(buffer, mGeometry.getLineLength());
+        putVarint(buffer, mMoves.length);
+        for (int move : mMoves)
+            putVarint(buffer, move);
+    }
+
+    /**
+     * Read a record written by writeTo at the buffer's position, advancing it.
+     *
+     * @param buffer
+     * @return the record
+     */
+    public static GameRecord readFrom(ByteBuffer buffer)
+    {
+        int header = buffer.get() & 0xFF;
+        Player marker = ((header & MARKER_O) != 0) ? Player.O : Player.X;
+        Outcome outcome = OUTCOMES[header & OUTCOME_MASK];
+
+        if ((header & VARINT_FORMAT) == 0)
+        {
+            int[] moves = new int[header >>> MOVE_COUNT_SHIFT];
+            for (int i = 0; i < moves.length; i += 2)
+            {
+                int packed = buffer.get() & 0xFF;
+                moves[i] = packed & 0xF;
+                if (i + 1 < moves.length)
+                    moves[i + 1] = packed >>> 4;
+            }
+            return new GameRecord(BoardGeometry.STANDARD, marker, outcome, moves);
+        }
+
+        int dimension = getVarint(buffer);
+        int lineLength = getVarint(buffer);
+        int[] moves = new int[getVarint(buffer)];
+        for (int i = 0; i < moves.length; i++)
+            moves[i] = getVarint(buffer);
+        return new GameRecord(BoardGeometry.get(dimension, lineLength), marker, outcome, moves);
+    }
+
+    /**
+     * Check if the record fits the 4 bits per move form.
+     */
+    private boolean isNibbleFormat()
+    {
+        return mGeometry.equals(BoardGeometry.STANDARD);
+    }
+
+    /**
+     * Get the number of bytes of a varint.
+     */
+    private static int getVarintSize(int value)
+    {
+        int size = 1;
+        while ((value >>>= 7) != 0)
+            size++;
+        return size;
+    }
+
+    /**
+     * Write an unsigned varint.
+     */
+    private static void putVarint(ByteBuffer buffer, int value)
+    {
+        while ((value & ~0x7F) != 0)
+        {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Read an unsigned varint.
+     */
+    private static int getVarint(ByteBuffer buffer)
+    {
+        int value = 0;
+        for (int shift = 0; shift < 7 * VARINT_MAX_BYTES; shift += 7)
+        {
+            int b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof GameRecord))
+            return false;
+        GameRecord record = (GameRecord) other;
+        return mGeometry.equals(record.mGeometry)
+                && mMarker == record.mMarker
+                && mOutcome == record.mOutcome
+                && Arrays.equals(mMoves, record.mMoves);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return 31 * (31 * (31 * mGeometry.hashCode() + mMarker.hashCode()) + mOutcome.hashCode())
+                + Arrays.hashCode(mMoves);
+    }
+
+    @Override
+    public String toString()
+    {
+        return mGeometry + " " + mMarker + " " + mOutcome + " " + Arrays.toString(mMoves);
+    }
+}
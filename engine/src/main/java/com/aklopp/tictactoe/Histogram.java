@@ -0,0 +1,143 @@
+package com.aklopp.tictactoe;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of non-negative values in power of 2 buckets: bucket 0 counts 0, bucket b counts
+ * the values from 2^(b-1) to 2^b - 1. Recording is a couple of instructions and the histogram
+ * never grows, so it can stay on in production; percentiles are accurate to a factor of 2.
+ * Not thread safe.
+ */
+public final class Histogram
+{
+    private static final int BUCKET_COUNT = 65;
+
+    /**
+     * Number of values in each bucket.
+     */
+    private final long[] mBucketCounts = new long[BUCKET_COUNT];
+
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    /**
+     * Count a value.
+     *
+     * @param value negative values are counted as 0
+     */
+    public void record(long value)
+    {
+        value = Math.max(0, value);
+        mBucketCounts[64 - Long.numberOfLeadingZeros(value)]++;
+        mCount++;
+        mSum += value;
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * Add the values counted by another histogram.
+     *
+     * @param other
+     */
+    public void add(Histogram other)
+    {
+        for (int i = 0; i < BUCKET_COUNT; i++)
+            mBucketCounts[i] += other.mBucketCounts[i];
+        mCount += other.mCount;
+        mSum += other.mSum;
+        mMax = Math.max(mMax, other.mMax);
+    }
+
+    /**
+     * Forget every value counted.
+     */
+    public void clear()
+    {
+        Arrays.fill(mBucketCounts, 0);
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    /**
+     * Get the number of values counted.
+     *
+     * @return count
+     */
+    public long getCount()
+    {
+        return mCount;
+    }
+
+    /**
+     * Get the sum of the values counted.
+     *
+     * @return sum
+     */
+    public long getSum()
+    {
+        return mSum;
+    }
+
+    /**
+     * Get the mean of the values counted.
+     *
+     * @return mean, 0 if there are none
+     */
+    public double getMean()
+    {
+        return (mCount == 0) ? 0 : (double) mSum / mCount;
+    }
+
+    /**
+     * Get the largest value counted.
+     *
+     * @return max, 0 if there are none
+     */
+    public long getMax()
+    {
+        return mMax;
+    }
+
+    /**
+     * Get an upper bound of a percentile: the top of the bucket holding it, or the max if lower.
+     *
+     * @param percentile 0 to 100
+     * @return value, 0 if there are none
+     */
+    public long getPercentile(double percentile)
+    {
+        long rank = (long) Math.ceil(percentile / 100 * mCount);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++)
+        {
+            seen += mBucketCounts[bucket];
+            if (seen >= rank && seen > 0)
+            {
+                long top = (bucket == 0) ? 0 : (bucket == 64) ? Long.MAX_VALUE : (1L << bucket) - 1;
+                return Math.min(top, mMax);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Copy the histogram.
+     *
+     * @return a histogram with the same counts
+     */
+    public Histogram copy()
+    {
+        Histogram copy = new Histogram();
+        copy.add(this);
+        return copy;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count %d, mean %.1f, p50 <= %d, p90 <= %d, p99 <= %d, max %d",
+                mCount, getMean(), getPercentile(50), getPercentile(90), getPercentile(99), mMax);
+    }
+}
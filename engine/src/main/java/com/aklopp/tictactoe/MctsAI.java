@@ -0,0 +1,945 @@
+package com.aklopp.tictactoe;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monte Carlo tree search (UCT) AI, an alternative to GameAI on boards too large for its
+ * heuristic search. Each playout walks down the tree picking the child with the highest upper
+ * confidence bound, adds the children of the leaf it reaches, then plays random moves on
+ * bitboards to the end of the game and counts the result along the path. The move played is
+ * the most visited child of the root.
+ * <p>
+ * Nodes live in parallel arrays of a fixed size pool rather than in objects, so a search
+ * allocates nothing per node; once the pool is full the tree stops growing and the remaining
+ * playouts refine its leaves. Several threads share one tree. A visit is counted on the way
+ * down as a loss and its result added on the way back, so threads walking the same path see a
+ * worse score and spread out (virtual loss).
+ * <p>
+ * A node limit in the search budget is the number of playouts, over all threads. In the
+ * SearchStats of a move, the node count is the number of playouts and the expanded node count
+ * the number of leaves expanded.
+ */
+public class MctsAI implements MoveStrategy
+{
+    /**
+     * Playouts per move when the budget sets no limit.
+     */
+    public static final long DEFAULT_PLAYOUT_LIMIT = 20000;
+
+    /**
+     * Number of nodes in the pool by default, 5 MB of arrays.
+     */
+    public static final int DEFAULT_NODE_CAPACITY = 1 << 18;
+
+    /**
+     * Weight of the exploration term of the upper confidence bound.
+     */
+    private static final double EXPLORATION = Math.sqrt(2);
+
+    /**
+     * A leaf gets children once visited this many times, so the pool isn't spent on leaves
+     * visited only once.
+     */
+    private static final int EXPANSION_VISIT_COUNT = 2;
+
+    /**
+     * Results are counted in half points: a win, a tie, a loss scores 0.
+     */
+    private static final int WIN_POINTS = 2;
+    private static final int TIE_POINTS = 1;
+
+    /**
+     * Winner of a playout that ended in a tie.
+     */
+    private static final int NO_WINNER = -1;
+
+    /**
+     * First child of a leaf that has no children yet, and of one whose children are being
+     * added by another thread.
+     */
+    private static final int UNEXPANDED = -1;
+    private static final int EXPANDING = -2;
+
+    /**
+     * Each thread checks the time every TIME_CHECK_MASK + 1 playouts.
+     */
+    private static final int TIME_CHECK_MASK = 0x3F;
+
+    /**
+     * Worker threads stop after this long without a search, so an AI that is dropped without
+     * close doesn't keep them alive.
+     */
+    private static final long HELPER_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * The rules of the board the AI plays on.
+     */
+    private final BoardGeometry mGeometry;
+
+    /**
+     * The number of nodes the pool holds.
+     */
+    private final int mNodeCapacity;
+
+    /**
+     * For every node, the cell played to reach it.
+     */
+    private final int[] mNodeMoves;
+
+    /**
+     * For every node, its number of children, set before its first child is published.
+     */
+    private final int[] mChildCounts;
+
+    /**
+     * For every node, the index of its first child, its children are contiguous.
+     * UNEXPANDED or EXPANDING while it has none.
+     */
+    private final AtomicIntegerArray mFirstChildren;
+
+    /**
+     * For every node, the number of playouts through it, including those still running.
+     */
+    private final AtomicIntegerArray mVisitCounts;
+
+    /**
+     * For every node, the half points scored through it by the player who played its move.
+     */
+    private final AtomicIntegerArray mScores;
+
+    /**
+     * The number of nodes in use. May run past the capacity when the pool fills up.
+     */
+    private final AtomicInteger mNodeCount = new AtomicInteger();
+
+    /**
+     * The number of playouts claimed by the threads for the search in progress.
+     */
+    private final AtomicLong mClaimedPlayoutCount = new AtomicLong();
+
+    /**
+     * Limits on the search when the AI is used as a MoveStrategy.
+     */
+    private SearchBudget mBudget = SearchBudget.ofNodes(DEFAULT_PLAYOUT_LIMIT);
+
+    /**
+     * The number of threads sharing the tree.
+     */
+    private int mThreadCount;
+
+    /**
+     * Seed of the random playouts, mixed with the move and thread number.
+     */
+    private long mSeed = 1;
+
+    /**
+     * The number of moves selected, so each search uses different random numbers.
+     */
+    private long mSearchCount;
+
+    /**
+     * Stats of every move selected, updated once per move.
+     */
+    private final SearchMetrics mMetrics = new SearchMetrics();
+
+    /**
+     * The playouts of each thread, the first one runs on the calling thread.
+     */
+    private Worker[] mWorkers;
+
+    /**
+     * Runs the workers of the other threads, null until the first search with more than one
+     * thread. Guarded by the AI.
+     */
+    private ExecutorService mHelperExecutor;
+
+    /**
+     * True once close has been called, after which no worker threads are started. Guarded by
+     * the AI.
+     */
+    private boolean mIsClosed;
+
+    /**
+     * The number of stop requests so far, incremented from any thread. A search stops once it
+     * differs from the stop token the search was started with.
+     */
+    private final AtomicInteger mStopCount = new AtomicInteger();
+
+    /**
+     * The stop token of the search in progress.
+     */
+    private int mStopToken;
+
+    /**
+     * Set once the calling thread is done searching, to stop the workers of the other threads.
+     */
+    private volatile boolean mHelperStopRequested;
+
+    /**
+     * The markers of each player at the root, indexed by Player ordinal, and the player to
+     * move there. Set before the workers start.
+     */
+    private final long[][] mRootWords;
+    private int mRootPlayer;
+    private int mRootEmptyCount;
+
+    /**
+     * System.nanoTime() at which the search in progress must stop, Long.MAX_VALUE for no limit.
+     */
+    private long mDeadlineNanos;
+
+    /**
+     * The number of playouts of the search in progress.
+     */
+    private long mPlayoutLimit;
+
+    /**
+     * The number of playouts and the time taken to select the last move.
+     */
+    private long mPlayoutCount;
+    private long mElapsedNanos;
+
+    /**
+     * Constructor for the 3 x 3 board.
+     */
+    public MctsAI()
+    {
+        this(BoardGeometry.STANDARD);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param geometry the board the AI plays on
+     */
+    public MctsAI(BoardGeometry geometry)
+    {
+        this(geometry, DEFAULT_NODE_CAPACITY);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param geometry     the board the AI plays on
+     * @param nodeCapacity the number of nodes the tree may hold, 20 bytes each
+     */
+    public MctsAI(BoardGeometry geometry, int nodeCapacity)
+    {
+        if (nodeCapacity <= geometry.getCellCount())
+            throw new IllegalArgumentException("Node pool too small for the board: " + nodeCapacity);
+
+        mGeometry = geometry;
+        mNodeCapacity = nodeCapacity;
+        mNodeMoves = new int[nodeCapacity];
+        mChildCounts = new int[nodeCapacity];
+        mFirstChildren = new AtomicIntegerArray(nodeCapacity);
+        mVisitCounts = new AtomicIntegerArray(nodeCapacity);
+        mScores = new AtomicIntegerArray(nodeCapacity);
+        mRootWords = new long[Player.values().length][geometry.getWordCount()];
+        mThreadCount = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Getter for the rules of the board the AI plays on.
+     *
+     * @return geometry
+     */
+    public BoardGeometry getGeometry()
+    {
+        return mGeometry;
+    }
+
+    /**
+     * Sets the limits on the search used by selectMove. Without a limit the AI runs
+     * DEFAULT_PLAYOUT_LIMIT playouts.
+     *
+     * @param budget
+     */
+    public void setBudget(SearchBudget budget)
+    {
+        this.mBudget = budget;
+    }
+
+    /**
+     * Getter for the limits on the search used by selectMove.
+     *
+     * @return budget
+     */
+    public SearchBudget getBudget()
+    {
+        return mBudget;
+    }
+
+    /**
+     * Sets how many threads share the tree of each move, every core by default.
+     *
+     * @param threadCount
+     */
+    public void setThreadCount(int threadCount)
+    {
+        if (threadCount < 1)
+            throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+
+        synchronized (this)
+        {
+            if (threadCount != mThreadCount && null != mHelperExecutor)
+            {
+                mHelperExecutor.shutdown();
+                mHelperExecutor = null;
+            }
+        }
+        mWorkers = null;
+        this.mThreadCount = threadCount;
+    }
+
+    /**
+     * Getter for how many threads share the tree of each move.
+     *
+     * @return thread count
+     */
+    public int getThreadCount()
+    {
+        return mThreadCount;
+    }
+
+    /**
+     * Sets the seed of the random playouts. With one thread, the same seed selects the same
+     * moves.
+     *
+     * @param seed
+     */
+    public void setSeed(long seed)
+    {
+        this.mSeed = seed;
+        this.mSearchCount = 0;
+    }
+
+    /**
+     * Get the number of playouts run to select the last move, over all threads.
+     *
+     * @return playout count
+     */
+    public long getPlayoutCount()
+    {
+        return mPlayoutCount;
+    }
+
+    /**
+     * Get the playout rate of each thread while selecting the last move.
+     *
+     * @return playouts per second per thread, 0 if the move needed no search
+     */
+    public double getPlayoutsPerSecondPerThread()
+    {
+        return (mElapsedNanos == 0) ? 0 : mPlayoutCount * 1e9 / mElapsedNanos / mThreadCount;
+    }
+
+    /**
+     * Get the number of nodes in the tree of the last move.
+     *
+     * @return node count, at most the pool capacity
+     */
+    public int getTreeSize()
+    {
+        return Math.min(mNodeCount.get(), mNodeCapacity);
+    }
+
+    /**
+     * Get the stats of the last move selected, and the totals and distributions of every move
+     * selected so far. May be read from any thread.
+     *
+     * @return metrics
+     */
+    public SearchMetrics getMetrics()
+    {
+        return mMetrics;
+    }
+
+    /**
+     * Get the stats of the last move selected.
+     *
+     * @return stats, null if no move was selected yet
+     */
+    public SearchStats getLastSearchStats()
+    {
+        return mMetrics.getLastStats();
+    }
+
+    /**
+     * Stop the search in progress, if any, and every search started with a stop token taken
+     * before this call, even one that has not started yet. May be called from any thread;
+     * makeMove then returns shortly after with the most visited move so far.
+     */
+    public void stop()
+    {
+        mStopCount.incrementAndGet();
+    }
+
+    /**
+     * Stop the worker threads. Call once the AI is no longer needed, from any thread. A search
+     * in progress still finishes, and later searches run on the calling thread only.
+     * Idle worker threads also stop on their own after HELPER_KEEP_ALIVE_SECONDS.
+     */
+    public synchronized void close()
+    {
+        mIsClosed = true;
+        if (null != mHelperExecutor)
+        {
+            mHelperExecutor.shutdown();
+            mHelperExecutor = null;
+        }
+    }
+
+    /**
+     * Get the stop token for a search about to be handed to another thread. Passed to
+     * makeMove, it makes a stop() that lands before that thread starts searching still stop
+     * the search.
+     *
+     * @return stop token
+     */
+    public int getStopToken()
+    {
+        return mStopCount.get();
+    }
+
+    /**
+     * Select a move with the search budget.
+     *
+     * @param position a position that is not game over
+     * @return the cell the AI plays
+     */
+    @Override
+    public int selectMove(Position position)
+    {
+        return makeMove(position, mBudget);
+    }
+
+    /**
+     * Select a move for the player to move within a time or playout budget.
+     *
+     * @param position
+     * @param budget   limits on the search, DEFAULT_PLAYOUT_LIMIT playouts if unlimited
+     * @return the cell the AI plays, GameAI.NO_MOVE if the game is already over
+     */
+    public int makeMove(Position position, SearchBudget budget)
+    {
+        return makeMove(position, budget, getStopToken());
+    }
+
+    /**
+     * Select a move within a budget, stopping early if stop() was called after the stop token
+     * was taken.
+     *
+     * @param position
+     * @param budget    limits on the search, DEFAULT_PLAYOUT_LIMIT playouts if unlimited
+     * @param stopToken from getStopToken, taken when the search was requested
+     * @return the cell the AI plays, GameAI.NO_MOVE if the game is already over
+     */
+    public int makeMove(Position position, SearchBudget budget, int stopToken)
+    {
+        long startNanos = System.nanoTime();
+        mStopToken = stopToken;
+        mHelperStopRequested = false;
+        mPlayoutCount = 0;
+        mElapsedNanos = 0;
+        if (position.isGameOver())
+            return GameAI.NO_MOVE;
+
+        mDeadlineNanos = (budget.getTimeLimitNanos() == 0)
+                ? Long.MAX_VALUE : startNanos + budget.getTimeLimitNanos();
+        mPlayoutLimit = budget.isLimited()
+                ? ((budget.getNodeLimit() == 0) ? Long.MAX_VALUE : budget.getNodeLimit()) : DEFAULT_PLAYOUT_LIMIT;
+        mClaimedPlayoutCount.set(0);
+
+        for (Player player : Player.values())
+            position.copyWords(player, mRootWords[player.ordinal()]);
+        mRootPlayer = position.getPlayerToMove().ordinal();
+        mRootEmptyCount = position.getEmptyCount();
+
+        Worker[] workers = getWorkers();
+        mSearchCount++;
+        for (int i = 0; i < workers.length; i++)
+            workers[i].reset(mix(mSeed + mSearchCount * workers.length + i));
+
+        // The root always has children, so every playout starts with a choice
+        mNodeCount.set(1);
+        mFirstChildren.set(0, UNEXPANDED);
+        mVisitCounts.set(0, 0);
+        mScores.set(0, 0);
+        workers[0].expand(0, mRootPlayer, mRootWords);
+        if (mChildCounts[0] == 1)
+        {
+            // Only one move is worth playing, no need to search
+            mMetrics.record(new SearchStats(false, System.nanoTime() - startNanos, 1, 0, 0, 0, 0, 0, 0));
+            return mNodeMoves[mFirstChildren.get(0)];
+        }
+
+        Future<?>[] helperResults = startHelpers(workers);
+        workers[0].run();
+        waitForHelpers(helperResults);
+
+        long expandedNodeCount = 0;
+        int maxDepth = 0;
+        for (Worker worker : workers)
+        {
+            mPlayoutCount += worker.mPlayoutCount;
+            expandedNodeCount += worker.mExpandedNodeCount;
+            maxDepth = Math.max(maxDepth, worker.mMaxDepth);
+        }
+        mElapsedNanos = System.nanoTime() - startNanos;
+        int threadCount = (null == helperResults) ? 1 : workers.length;
+        mMetrics.record(new SearchStats(false, mElapsedNanos, threadCount, maxDepth, mPlayoutCount,
+                expandedNodeCount, 0, 0, 0));
+
+        return getMostVisitedMove();
+    }
+
+    /**
+     * Get the move of the most visited child of the root, the one whose value is most
+     * certain. Ties go to the higher score.
+     *
+     * @return cell
+     */
+    private int getMostVisitedMove()
+    {
+        int first = mFirstChildren.get(0);
+        int best = first;
+        for (int child = first + 1; child < first + mChildCounts[0]; child++)
+        {
+            int visitCount = mVisitCounts.get(child);
+            int bestVisitCount = mVisitCounts.get(best);
+            if (visitCount > bestVisitCount || (visitCount == bestVisitCount && mScores.get(child) > mScores.get(best)))
+                best = child;
+        }
+        return mNodeMoves[best];
+    }
+
+    /**
+     * Get the workers, creating them on the first search with the current thread count.
+     *
+     * @return workers
+     */
+    private Worker[] getWorkers()
+    {
+        if (null == mWorkers)
+        {
+            mWorkers = new Worker[mThreadCount];
+            for (int i = 0; i < mThreadCount; i++)
+                mWorkers[i] = new Worker();
+        }
+        return mWorkers;
+    }
+
+    /**
+     * Start the workers of the other threads.
+     *
+     * @param workers
+     * @return the pending workers, null if the search runs on the calling thread only
+     */
+    private Future<?>[] startHelpers(Worker[] workers)
+    {
+        if (workers.length == 1)
+            return null;
+
+        // Submitted under the lock, so close can't shut the executor down in between
+        synchronized (this)
+        {
+            if (mIsClosed)
+                return null;
+
+            if (null == mHelperExecutor)
+            {
+                ThreadPoolExecutor executor = new ThreadPoolExecutor(workers.length - 1, workers.length - 1,
+                        HELPER_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory()
+                        {
+                            @Override
+                            public Thread newThread(Runnable runnable)
+                            {
+                                Thread thread = new Thread(runnable, "MctsAI worker");
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                executor.allowCoreThreadTimeOut(true);
+                mHelperExecutor = executor;
+            }
+
+            Future<?>[] helperResults = new Future<?>[workers.length - 1];
+            for (int i = 1; i < workers.length; i++)
+                helperResults[i - 1] = mHelperExecutor.submit(workers[i]);
+            return helperResults;
+        }
+    }
+
+    /**
+     * Wait for the workers of the other threads, which stop on the same budget as the calling
+     * thread, so the next search starts with every thread idle.
+     *
+     * @param helperResults the pending workers, null if there are none
+     */
+    private void waitForHelpers(Future<?>[] helperResults)
+    {
+        if (null == helperResults)
+            return;
+
+        // Stop the helpers too if the calling thread stopped early, e.g. when interrupted
+        mHelperStopRequested = true;
+        boolean isInterrupted = false;
+        for (Future<?> helperResult : helperResults)
+        {
+            while (true)
+            {
+                try
+                {
+                    helperResult.get();
+                    break;
+                } catch (InterruptedException e)
+                {
+                    // The helpers stop soon anyway, keep waiting and restore the flag afterwards
+                    isInterrupted = true;
+                } catch (ExecutionException e)
+                {
+                    throw new IllegalStateException("Search worker failed", e.getCause());
+                }
+            }
+        }
+
+        if (isInterrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Scramble a seed, so neighboring seeds give unrelated random numbers (SplitMix64).
+     *
+     * @param seed
+     * @return a non-zero value
+     */
+    private static long mix(long seed)
+    {
+        long z = seed + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z ^= z >>> 31;
+        return (z == 0) ? 1 : z;
+    }
+
+    /**
+     * The playouts of one thread, with its own board and random numbers.
+     */
+    private final class Worker implements Runnable
+    {
+        /**
+         * The markers of each player during a playout, indexed by Player ordinal.
+         */
+        private final long[][] mWords = new long[Player.values().length][mGeometry.getWordCount()];
+
+        /**
+         * The nodes visited by the playout in progress, from the root.
+         */
+        private final int[] mPath = new int[mGeometry.getCellCount() + 1];
+
+        /**
+         * The blank cells during the random part of a playout, and the new children of a
+         * leaf while expanding it.
+         */
+        private final int[] mCells = new int[mGeometry.getCellCount()];
+
+        /**
+         * Candidate cells of a leaf being expanded.
+         */
+        private final long[] mCandidates = new long[mGeometry.getWordCount()];
+
+        /**
+         * Cells next to a marker, while expanding a leaf on a large board.
+         */
+        private final long[] mNeighbors = new long[mGeometry.getWordCount()];
+
+        /**
+         * State of the xorshift random number generator, never 0.
+         */
+        private long mRandomState;
+
+        private long mPlayoutCount;
+        private long mExpandedNodeCount;
+        private int mMaxDepth;
+
+        /**
+         * Prepare for a new search.
+         *
+         * @param seed non-zero
+         */
+        void reset(long seed)
+        {
+            mRandomState = seed;
+            mPlayoutCount = 0;
+            mExpandedNodeCount = 0;
+            mMaxDepth = 0;
+        }
+
+        @Override
+        public void run()
+        {
+            while (!mHelperStopRequested && mStopCount.get() == mStopToken
+                    && mClaimedPlayoutCount.getAndIncrement() < mPlayoutLimit)
+            {
+                playout();
+                mPlayoutCount++;
+                if ((mPlayoutCount & TIME_CHECK_MASK) == 0 && System.nanoTime() >= mDeadlineNanos)
+                    break;
+            }
+        }
+
+        /**
+         * Run one playout from the root: down the tree, expand the leaf, play randomly to the
+         * end, and count the result on the way back.
+         */
+        private void playout()
+        {
+            for (int player = 0; player < mWords.length; player++)
+                System.arraycopy(mRootWords[player], 0, mWords[player], 0, mWords[player].length);
+
+            int player = mRootPlayer;
+            int emptyCount = mRootEmptyCount;
+            int node = 0;
+            int depth = 0;
+            int winner = NO_WINNER;
+            boolean isGameOver = false;
+            mPath[0] = 0;
+            mVisitCounts.incrementAndGet(0);
+
+            while (true)
+            {
+                int first = mFirstChildren.get(node);
+                if (first < 0)
+                {
+                    if (first == EXPANDING || mVisitCounts.get(node) < EXPANSION_VISIT_COUNT
+                            || !expand(node, player, mWords))
+                        break;
+                    first = mFirstChildren.get(node);
+                }
+
+                // Counted as a loss until the result is known, so other threads look elsewhere
+                node = selectChild(node, first);
+                mVisitCounts.incrementAndGet(node);
+                mPath[++depth] = node;
+
+                int cell = mNodeMoves[node];
+                Bits.set(mWords[player], cell);
+                emptyCount--;
+                if (mGeometry.containsLineThrough(mWords[player], cell))
+                {
+                    winner = player;
+                    isGameOver = true;
+                } else if (emptyCount == 0)
+                {
+                    isGameOver = true;
+                }
+                player ^= 1;
+                if (isGameOver)
+                    break;
+            }
+            mMaxDepth = Math.max(mMaxDepth, depth);
+
+            if (!isGameOver)
+                winner = playRandomly(player);
+
+            // The node at odd depths holds a move of the root player
+            for (int i = 1; i <= depth; i++)
+            {
+                int mover = ((i & 1) == 1) ? mRootPlayer : mRootPlayer ^ 1;
+                int points = (winner == NO_WINNER) ? TIE_POINTS : (winner == mover) ? WIN_POINTS : 0;
+                if (points != 0)
+                    mScores.addAndGet(mPath[i], points);
+            }
+        }
+
+        /**
+         * Pick the child with the highest upper confidence bound. Unvisited children come
+         * first, in the random order they were added in.
+         *
+         * @param node
+         * @param first the first child of the node
+         * @return child node
+         */
+        private int selectChild(int node, int first)
+        {
+            double logVisitCount = Math.log(Math.max(1, mVisitCounts.get(node)));
+            int best = first;
+            double bestBound = Double.NEGATIVE_INFINITY;
+            for (int child = first; child < first + mChildCounts[node]; child++)
+            {
+                int visitCount = mVisitCounts.get(child);
+                if (visitCount == 0)
+                    return child;
+
+                double bound = (double) mScores.get(child) / (WIN_POINTS * visitCount)
+                        + EXPLORATION * Math.sqrt(logVisitCount / visitCount);
+                if (bound > bestBound)
+                {
+                    bestBound = bound;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Add a child for every candidate move of a leaf, unless another thread is already
+         * doing so or the pool is full.
+         *
+         * @param node
+         * @param player the player to move at the node
+         * @param words  the markers of each player at the node
+         * @return true if the node has children now
+         */
+        boolean expand(int node, int player, long[][] words)
+        {
+            if (mNodeCount.get() + mGeometry.getCellCount() > mNodeCapacity
+                    || !mFirstChildren.compareAndSet(node, UNEXPANDED, EXPANDING))
+                return false;
+
+            int count = getCandidateCells(words);
+            int first = mNodeCount.getAndAdd(count);
+            if (first + count > mNodeCapacity)
+            {
+                mFirstChildren.set(node, UNEXPANDED);
+                return false;
+            }
+
+            for (int i = 0; i < count; i++)
+            {
+                int child = first + i;
+                mNodeMoves[child] = mCells[i];
+                mChildCounts[child] = 0;
+                mFirstChildren.set(child, UNEXPANDED);
+                mVisitCounts.set(child, 0);
+                mScores.set(child, 0);
+            }
+            mChildCounts[node] = count;
+
+            // Publishes the children to the other threads
+            mFirstChildren.set(node, first);
+            mExpandedNodeCount++;
+            return true;
+        }
+
+        /**
+         * Put the moves worth adding to the tree in mCells, in random order. On boards too large
+         * to consider every blank cell, only the cells next to a marker are used, or the first
+         * cell of the move order when the board is empty.
+         *
+         * @param words the markers of each player
+         * @return the number of moves
+         */
+        private int getCandidateCells(long[][] words)
+        {
+            int wordCount = mCandidates.length;
+            long[] xWords = words[Player.X.ordinal()];
+            long[] oWords = words[Player.O.ordinal()];
+            boolean isEmpty = true;
+            for (int i = 0; i < wordCount; i++)
+            {
+                mCandidates[i] = ~(xWords[i] | oWords[i]);
+                isEmpty &= (xWords[i] | oWords[i]) == 0;
+            }
+            mCandidates[wordCount - 1] &= mGeometry.getLastWordMask();
+
+            if (mGeometry.isMoveNeighborhoodRestricted())
+            {
+                if (isEmpty)
+                {
+                    mCells[0] = mGeometry.getMoveOrder()[0];
+                    return 1;
+                }
+
+                for (int i = 0; i < wordCount; i++)
+                    mNeighbors[i] = 0;
+                for (int i = 0; i < wordCount; i++)
+                {
+                    for (long bits = xWords[i] | oWords[i]; bits != 0; bits &= bits - 1)
+                    {
+                        int cell = i * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits);
+                        for (int j = 0; j < wordCount; j++)
+                            mNeighbors[j] |= mGeometry.getNeighborMask(cell, j);
+                    }
+                }
+                for (int i = 0; i < wordCount; i++)
+                    mCandidates[i] &= mNeighbors[i];
+            }
+
+            int count = 0;
+            for (int i = 0; i < wordCount; i++)
+            {
+                for (long bits = mCandidates[i]; bits != 0; bits &= bits - 1)
+                {
+                    // Insert at a random index (inside-out Fisher-Yates shuffle)
+                    int index = nextInt(count + 1);
+                    mCells[count++] = mCells[index];
+                    mCells[index] = i * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Play uniformly random moves to the end of the game.
+         *
+         * @param player the player to move
+         * @return the ordinal of the winner, NO_WINNER for a tie
+         */
+        private int playRandomly(int player)
+        {
+            int count = 0;
+            int wordCount = mCandidates.length;
+            long[] xWords = mWords[Player.X.ordinal()];
+            long[] oWords = mWords[Player.O.ordinal()];
+            for (int i = 0; i < wordCount; i++)
+            {
+                long blank = ~(xWords[i] | oWords[i]);
+                if (i == wordCount - 1)
+                    blank &= mGeometry.getLastWordMask();
+                for (; blank != 0; blank &= blank - 1)
+                    mCells[count++] = i * Bits.WORD_SIZE + Long.numberOfTrailingZeros(blank);
+            }
+
+            while (count > 0)
+            {
+                int index = nextInt(count);
+                int cell = mCells[index];
+                mCells[index] = mCells[--count];
+
+                Bits.set(mWords[player], cell);
+                if (mGeometry.containsLineThrough(mWords[player], cell))
+                    return player;
+                player ^= 1;
+            }
+            return NO_WINNER;
+        }
+
+        /**
+         * Get a random number (xorshift64).
+         *
+         * @param bound
+         * @return 0 to bound - 1
+         */
+        private int nextInt(int bound)
+        {
+            long x = mRandomState;
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            mRandomState = x;
+            return (int) (((x >>> 32) * bound) >>> 32);
+        }
+    }
+}
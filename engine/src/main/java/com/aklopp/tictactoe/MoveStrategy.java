@@ -0,0 +1,16 @@
+package com.aklopp.tictactoe;
+
+/**
+ * A way of choosing moves, so different players can be plugged into the same game loop.
+ * Implementations keep per-game state at most and are used by one thread at a time.
+ */
+public interface MoveStrategy
+{
+    /**
+     * Choose a move for the player to move.
+     *
+     * @param position a position that is not game over
+     * @return a blank cell
+     */
+    int selectMove(Position position);
+}
@@ -0,0 +1,269 @@
+package com.aklopp.tictactoe;
+
+import java.util.Arrays;
+
+/**
+ * Solved table of every reachable 3 x 3 position, giving the best move and the
+ * game-theoretic value in constant time.
+ * Positions are stored once per symmetry class, keyed by the smallest base-3 code among the
+ * 8 symmetric versions of the board, so the whole game fits in 765 entries.
+ */
+public final class PerfectPlayTable
+{
+    /**
+     * Score of a won game. Wins reached with fewer markers on the board score higher.
+     */
+    private static final int WIN_SCORE = 100;
+
+    /**
+     * The number of cells on the board.
+     */
+    private static final int CELL_COUNT = 9;
+
+    /**
+     * Mask with a bit set for every cell on the board.
+     */
+    private static final int FULL_BOARD = (1 << CELL_COUNT) - 1;
+
+    /**
+     * The number of distinct base-3 board codes (3^9).
+     */
+    private static final int CODE_COUNT = 19683;
+
+    /**
+     * Marks a code that is not the canonical form of any reachable position.
+     */
+    private static final byte UNSOLVED = Byte.MIN_VALUE;
+
+    /**
+     * The base-3 code of every 9-bit occupancy mask, with a digit of 1 for every set cell.
+     */
+    private static final int[] BASE_3_CODES = new int[FULL_BOARD + 1];
+
+    /**
+     * The rotations and reflections of the board.
+     */
+    private static final BoardSymmetry SYMMETRY = BoardGeometry.STANDARD.getSymmetry();
+
+    /**
+     * For each symmetry, the transformed version of every 9-bit occupancy mask.
+     */
+    private static final int[][] MASK_MAPS = new int[BoardSymmetry.SYMMETRY_COUNT][FULL_BOARD + 1];
+
+    static
+    {
+        for (int mask = 1; mask <= FULL_BOARD; mask++)
+        {
+            int highestCell = 31 - Integer.numberOfLeadingZeros(mask);
+            int power = 1;
+            for (int cell = 0; cell < highestCell; cell++)
+                power *= 3;
+            BASE_3_CODES[mask] = BASE_3_CODES[mask & ~(1 << highestCell)] + power;
+        }
+
+        for (int symmetry = 0; symmetry < BoardSymmetry.SYMMETRY_COUNT; symmetry++)
+        {
+            for (int mask = 0; mask <= FULL_BOARD; mask++)
+            {
+                int mapped = 0;
+                for (int bits = mask; bits != 0; bits &= bits - 1)
+                    mapped |= 1 << SYMMETRY.mapCell(symmetry, Integer.numberOfTrailingZeros(bits));
+                MASK_MAPS[symmetry][mask] = mapped;
+            }
+        }
+    }
+
+    /**
+     * Best move for each canonical code, in canonical cell coordinates. GameAI.NO_MOVE once the
+     * game is over.
+     */
+    private final byte[] mBestMoves = new byte[CODE_COUNT];
+
+    /**
+     * Score for the player to move for each canonical code, UNSOLVED if never reached.
+     */
+    private final byte[] mScores = new byte[CODE_COUNT];
+
+    /**
+     * The number of canonical positions in the table.
+     */
+    private int mPositionCount;
+
+    /**
+     * Constructor, solves every position reachable from the empty board.
+     */
+    private PerfectPlayTable()
+    {
+        Arrays.fill(mScores, UNSOLVED);
+        solve(0, 0);
+    }
+
+    /**
+     * Get the shared table, solving the game on first use.
+     *
+     * @return the table
+     */
+    public static PerfectPlayTable getInstance()
+    {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Get the best move for the player to move.
+     *
+     * @param position
+     * @return the cell to play, GameAI.NO_MOVE if the game is over, the position is not on the
+     * 3 x 3 board or it can't be reached in a legal game
+     */
+    public int getBestMove(Position position)
+    {
+        if (!BoardGeometry.STANDARD.equals(position.getGeometry()))
+            return GameAI.NO_MOVE;
+
+        int xBits = (int) position.getBits(Player.X);
+        int oBits = (int) position.getBits(Player.O);
+        int symmetry = getCanonicalSymmetry(xBits, oBits);
+        int code = getCode(symmetry, xBits, oBits);
+
+        if (mScores[code] == UNSOLVED || mBestMoves[code] == GameAI.NO_MOVE)
+            return GameAI.NO_MOVE;
+
+        return SYMMETRY.mapCell(SYMMETRY.inverse(symmetry), mBestMoves[code]);
+    }
+
+    /**
+     * Get the game-theoretic value of a position for the player to move.
+     *
+     * @param position
+     * @return 1 for a forced win, 0 for a draw, -1 for a forced loss
+     * @throws IllegalArgumentException if the position is not on the 3 x 3 board or can't be
+     * reached in a legal game
+     */
+    public int getValue(Position position)
+    {
+        if (!BoardGeometry.STANDARD.equals(position.getGeometry()))
+            throw new IllegalArgumentException("Only 3 x 3 positions are solved");
+
+        int xBits = (int) position.getBits(Player.X);
+        int oBits = (int) position.getBits(Player.O);
+        int score = mScores[getCode(getCanonicalSymmetry(xBits, oBits), xBits, oBits)];
+
+        if (score == UNSOLVED)
+            throw new IllegalArgumentException("Unreachable position:\n" + position);
+
+        return Integer.signum(score);
+    }
+
+    /**
+     * Get the number of canonical positions in the table.
+     *
+     * @return position count
+     */
+    public int getPositionCount()
+    {
+        return mPositionCount;
+    }
+
+    /**
+     * Solve the position with the given masks and every position reachable from it.
+     *
+     * @param xBits
+     * @param oBits
+     * @return score for the player to move
+     */
+    private int solve(int xBits, int oBits)
+    {
+        int symmetry = getCanonicalSymmetry(xBits, oBits);
+        int code = getCode(symmetry, xBits, oBits);
+        if (mScores[code] != UNSOLVED)
+            return mScores[code];
+
+        Position position = new Position(xBits, oBits);
+        Player player = position.getPlayerToMove();
+        int markerCount = Integer.bitCount(xBits | oBits);
+        int bestScore;
+        int bestMove = GameAI.NO_MOVE;
+
+        if (position.hasWon(player.getOpponent()))
+        {
+            // The previous move won the game
+            bestScore = -(WIN_SCORE - markerCount);
+        } else if (position.isFull())
+        {
+            bestScore = 0;
+        } else
+        {
+            bestScore = Integer.MIN_VALUE;
+            int emptyBits = FULL_BOARD & ~(xBits | oBits);
+            for (int move : BoardGeometry.STANDARD.getMoveOrder())
+            {
+                int bit = 1 << move;
+                if ((emptyBits & bit) == 0)
+                    continue;
+
+                int score = (player == Player.X)
+                        ? -solve(xBits | bit, oBits)
+                        : -solve(xBits, oBits | bit);
+                if (score > bestScore)
+                {
+                    bestScore = score;
+                    bestMove = move;
+                }
+            }
+        }
+
+        mScores[code] = (byte) bestScore;
+        mBestMoves[code] = (byte) ((bestMove == GameAI.NO_MOVE)
+                ? GameAI.NO_MOVE
+                : SYMMETRY.mapCell(symmetry, bestMove));
+        mPositionCount++;
+        return bestScore;
+    }
+
+    /**
+     * Find the symmetry that maps the position onto its canonical form, the version with the
+     * smallest code.
+     *
+     * @param xBits
+     * @param oBits
+     * @return symmetry
+     */
+    private static int getCanonicalSymmetry(int xBits, int oBits)
+    {
+        int bestSymmetry = BoardSymmetry.IDENTITY;
+        int bestCode = Integer.MAX_VALUE;
+        for (int symmetry = 0; symmetry < BoardSymmetry.SYMMETRY_COUNT; symmetry++)
+        {
+            int code = getCode(symmetry, xBits, oBits);
+            if (code < bestCode)
+            {
+                bestCode = code;
+                bestSymmetry = symmetry;
+            }
+        }
+        return bestSymmetry;
+    }
+
+    /**
+     * Get the base-3 code of the position after applying a symmetry. Each cell is a digit:
+     * 0 for blank, 1 for X, 2 for O.
+     *
+     * @param symmetry
+     * @param xBits
+     * @param oBits
+     * @return code
+     */
+    private static int getCode(int symmetry, int xBits, int oBits)
+    {
+        return BASE_3_CODES[MASK_MAPS[symmetry][xBits]]
+                + 2 * BASE_3_CODES[MASK_MAPS[symmetry][oBits]];
+    }
+
+    /**
+     * Lazily creates the shared table the first time it is requested.
+     */
+    private static class Holder
+    {
+        static final PerfectPlayTable INSTANCE = new PerfectPlayTable();
+    }
+}
@@ -0,0 +1,20 @@
+package com.aklopp.tictactoe;
+
+/**
+ * Enum describing the two sides of a game. X always moves first.
+ */
+public enum Player
+{
+    X,
+    O;
+
+    /**
+     * Get the other side of the game.
+     *
+     * @return the opponent of this player
+     */
+    public Player getOpponent()
+    {
+        return (this == X) ? O : X;
+    }
+}
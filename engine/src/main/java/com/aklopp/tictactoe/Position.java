@@ -0,0 +1,296 @@
+package com.aklopp.tictactoe;
+
+import java.util.Arrays;
+
+/**
+ * Compact, immutable snapshot of a game board used by the game AI.
+ * Each player's markers are stored as an occupancy bitset where bit (row * N + col) is set
+ * when that player has a marker on the cell, so the search never has to touch the views.
+ * On the 3 x 3 board each bitset is a single 9-bit mask.
+ */
+public final class Position
+{
+    /**
+     * The rules of the board.
+     */
+    private final BoardGeometry mGeometry;
+
+    /**
+     * Cells holding an X marker.
+     */
+    private final long[] mXWords;
+
+    /**
+     * Cells holding an O marker.
+     */
+    private final long[] mOWords;
+
+    /**
+     * Zobrist hash of the board.
+     */
+    private final long mHash;
+
+    /**
+     * Constructor for an empty 3 x 3 board.
+     */
+    public Position()
+    {
+        this(BoardGeometry.STANDARD);
+    }
+
+    /**
+     * Constructor for an empty board.
+     *
+     * @param geometry
+     */
+    public Position(BoardGeometry geometry)
+    {
+        this(geometry, new long[geometry.getWordCount()], new long[geometry.getWordCount()], 0);
+    }
+
+    /**
+     * Constructor for a 3 x 3 board.
+     *
+     * @param xBits cells holding an X marker
+     * @param oBits cells holding an O marker
+     */
+    public Position(int xBits, int oBits)
+    {
+        this(BoardGeometry.STANDARD, new long[]{xBits}, new long[]{oBits});
+    }
+
+    /**
+     * Constructor
+     *
+     * @param geometry
+     * @param xWords   cells holding an X marker, copied
+     * @param oWords   cells holding an O marker, copied
+     */
+    public Position(BoardGeometry geometry, long[] xWords, long[] oWords)
+    {
+        int wordCount = geometry.getWordCount();
+        if (xWords.length != wordCount || oWords.length != wordCount)
+            throw new IllegalArgumentException("Expected " + wordCount + " words per player");
+
+        for (int i = 0; i < wordCount; i++)
+        {
+            long validMask = (i == wordCount - 1) ? geometry.getLastWordMask() : -1L;
+            if ((xWords[i] & oWords[i]) != 0 || ((xWords[i] | oWords[i]) & ~validMask) != 0)
+                throw new IllegalArgumentException("Invalid board masks in word " + i);
+        }
+
+        this.mGeometry = geometry;
+        this.mXWords = xWords.clone();
+        this.mOWords = oWords.clone();
+        this.mHash = geometry.getZobrist().hash(mXWords, mOWords);
+    }
+
+    /**
+     * Constructor for a position derived from another, with the hash already updated.
+     *
+     * @param geometry
+     * @param xWords   cells holding an X marker, not copied
+     * @param oWords   cells holding an O marker, not copied
+     * @param hash     Zobrist hash of the board
+     */
+    private Position(BoardGeometry geometry, long[] xWords, long[] oWords, long hash)
+    {
+        this.mGeometry = geometry;
+        this.mXWords = xWords;
+        this.mOWords = oWords;
+        this.mHash = hash;
+    }
+
+    /**
+     * Getter for the rules of the board.
+     *
+     * @return geometry
+     */
+    public BoardGeometry getGeometry()
+    {
+        return mGeometry;
+    }
+
+    /**
+     * Get the occupancy mask of the given player on a board of at most 64 cells.
+     *
+     * @param player
+     * @return mask of cells holding the player's marker
+     */
+    public long getBits(Player player)
+    {
+        if (mGeometry.getWordCount() != 1)
+            throw new IllegalStateException("Board " + mGeometry + " needs more than one word");
+        return getWord(player, 0);
+    }
+
+    /**
+     * Get one word of the occupancy bitset of the given player.
+     *
+     * @param player
+     * @param wordIndex
+     * @return 64 cells of the player's bitset
+     */
+    public long getWord(Player player, int wordIndex)
+    {
+        return (player == Player.X) ? mXWords[wordIndex] : mOWords[wordIndex];
+    }
+
+    /**
+     * Copy the occupancy bitset of the given player.
+     *
+     * @param player
+     * @param words  destination, getGeometry().getWordCount() longs
+     */
+    public void copyWords(Player player, long[] words)
+    {
+        System.arraycopy((player == Player.X) ? mXWords : mOWords, 0, words, 0, words.length);
+    }
+
+    /**
+     * Get the player whose marker is on the given cell.
+     *
+     * @param cell
+     * @return the player, null if the cell is blank
+     */
+    public Player getPlayerAt(int cell)
+    {
+        if (Bits.isSet(mXWords, cell))
+            return Player.X;
+        if (Bits.isSet(mOWords, cell))
+            return Player.O;
+        return null;
+    }
+
+    /**
+     * Get the number of markers a player has on the board.
+     *
+     * @param player
+     * @return marker count
+     */
+    public int getMarkerCount(Player player)
+    {
+        return Bits.count((player == Player.X) ? mXWords : mOWords);
+    }
+
+    /**
+     * Get the number of blank cells.
+     *
+     * @return blank cell count
+     */
+    public int getEmptyCount()
+    {
+        return mGeometry.getCellCount() - getMarkerCount(Player.X) - getMarkerCount(Player.O);
+    }
+
+    /**
+     * Get the player who places the next marker. X always moves first.
+     *
+     * @return the player to move
+     */
+    public Player getPlayerToMove()
+    {
+        return (getMarkerCount(Player.X) == getMarkerCount(Player.O)) ? Player.X : Player.O;
+    }
+
+    /**
+     * Place the marker of the player to move on the given cell.
+     *
+     * @param cell a blank cell
+     * @return the resulting position
+     */
+    public Position play(int cell)
+    {
+        if (null != getPlayerAt(cell))
+            throw new IllegalArgumentException("Cell " + cell + " is not blank");
+
+        Player player = getPlayerToMove();
+        long hash = mHash ^ mGeometry.getZobrist().getKey(player, cell);
+        if (player == Player.X)
+        {
+            long[] xWords = mXWords.clone();
+            Bits.set(xWords, cell);
+            return new Position(mGeometry, xWords, mOWords, hash);
+        }
+        long[] oWords = mOWords.clone();
+        Bits.set(oWords, cell);
+        return new Position(mGeometry, mXWords, oWords, hash);
+    }
+
+    /**
+     * Get the Zobrist hash of the board.
+     *
+     * @return hash
+     */
+    public long getHash()
+    {
+        return mHash;
+    }
+
+    /**
+     * Check if the given player has completed a winning line.
+     *
+     * @param player
+     * @return true if the player has won
+     */
+    public boolean hasWon(Player player)
+    {
+        return mGeometry.containsLine((player == Player.X) ? mXWords : mOWords);
+    }
+
+    /**
+     * Check if there are no blank cells left.
+     *
+     * @return true if the board is full
+     */
+    public boolean isFull()
+    {
+        return getEmptyCount() == 0;
+    }
+
+    /**
+     * Check if the game is over, either by a win or by a full board.
+     *
+     * @return true if game is over, false otherwise
+     */
+    public boolean isGameOver()
+    {
+        return isFull() || hasWon(Player.X) || hasWon(Player.O);
+    }
+
+    @Override
+    public boolean equals(Object other)
+    {
+        if (!(other instanceof Position))
+            return false;
+        Position position = (Position) other;
+        return mGeometry.equals(position.mGeometry)
+                && Arrays.equals(mXWords, position.mXWords)
+                && Arrays.equals(mOWords, position.mOWords);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return (int) (mHash ^ (mHash >>> 32));
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder board = new StringBuilder();
+        for (int row = 0; row < mGeometry.getDimension(); row++)
+        {
+            for (int col = 0; col < mGeometry.getDimension(); col++)
+            {
+                Player player = getPlayerAt(mGeometry.toCell(row, col));
+                if (null == player)
+                    board.append("[ ]");
+                else
+                    board.append('[').append(player.name()).append(']');
+            }
+            board.append('\n');
+        }
+        return board.toString();
+    }
+}
@@ -0,0 +1,40 @@
+package com.aklopp.tictactoe;
+
+import java.util.Random;
+
+/**
+ * Testing purposes - plays a uniformly random empty spot on the board.
+ */
+public class RandomStrategy implements MoveStrategy
+{
+    /**
+     * Source of the moves, seeded so runs can be repeated.
+     */
+    private final Random mRandom;
+
+    /**
+     * Constructor
+     *
+     * @param seed
+     */
+    public RandomStrategy(long seed)
+    {
+        this.mRandom = new Random(seed);
+    }
+
+    @Override
+    public int selectMove(Position position)
+    {
+        int emptyCount = position.getEmptyCount();
+        if (emptyCount == 0)
+            return GameAI.NO_MOVE;
+
+        // Walk to the chosen empty cell
+        int remaining = mRandom.nextInt(emptyCount);
+        for (int cell = 0; ; cell++)
+        {
+            if (null == position.getPlayerAt(cell) && remaining-- == 0)
+                return cell;
+        }
+    }
+}
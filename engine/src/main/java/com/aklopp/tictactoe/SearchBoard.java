@@ -0,0 +1,529 @@
+package com.aklopp.tictactoe;
+
+import java.util.Arrays;
+
+/**
+ * Mutable board the game AI searches on. Moves are made and undone in place, and the hash, the
+ * number of markers each player has on every winning line, the number of threat lines and the
+ * heuristic score are updated incrementally, so searching a line of play neither copies nor
+ * rescans the board.
+ * <p>
+ * A threat line of a player holds none of the opponent's markers and misses 1 to
+ * MAX_THREAT_MISSING of the player's markers. On a five in a row board these are the fours,
+ * threes and twos. An open four shows up as two fours missing different cells, which the
+ * opponent cannot both block; a closed four as a single one.
+ */
+public final class SearchBoard
+{
+    /**
+     * Threat lines are tracked up to this many missing markers.
+     */
+    public static final int MAX_THREAT_MISSING = 3;
+
+    /**
+     * Both players, cached because Player.values() copies the array on every call.
+     */
+    private static final Player[] PLAYERS = Player.values();
+
+    /**
+     * The rules of the board.
+     */
+    private final BoardGeometry mGeometry;
+
+    /**
+     * The number of longs in a bitset of all cells.
+     */
+    private final int mWordCount;
+
+    /**
+     * Occupancy bitsets, indexed by Player ordinal.
+     */
+    private final long[][] mWords;
+
+    /**
+     * The number of markers on each winning line, indexed by Player ordinal then line.
+     */
+    private final int[][] mLineCounts;
+
+    /**
+     * The number of winning lines each player has completed, indexed by Player ordinal.
+     */
+    private final int[] mCompleteLineCounts = new int[PLAYERS.length];
+
+    /**
+     * The number of threat lines of each player, indexed by Player ordinal then number of
+     * missing markers.
+     */
+    private final int[][] mThreatLineCounts = new int[PLAYERS.length][MAX_THREAT_MISSING + 1];
+
+    /**
+     * Heuristic score of a line for X, indexed by xCount * (lineLength + 1) + oCount.
+     */
+    private final int[] mLineValues;
+
+    /**
+     * Sum of the line values of every winning line.
+     */
+    private long mScore;
+
+    /**
+     * The cells played since the board was set, in order.
+     */
+    private final int[] mMoves;
+
+    /**
+     * The number of entries of mMoves in use.
+     */
+    private int mMoveCount;
+
+    /**
+     * The number of markers on the board.
+     */
+    private int mMarkerCount;
+
+    /**
+     * The player who places the next marker.
+     */
+    private Player mPlayerToMove;
+
+    /**
+     * Zobrist hash of the board after applying each symmetry. Entry IDENTITY is the hash of
+     * the board itself, and an entry equal to it means that symmetry likely preserves the board.
+     */
+    private final long[] mSymmetryHashes = new long[BoardSymmetry.SYMMETRY_COUNT];
+
+    /**
+     * Constructor for an empty board.
+     *
+     * @param geometry
+     * @param lineValues heuristic score of a line for X, indexed by
+     *                   xCount * (lineLength + 1) + oCount
+     */
+    public SearchBoard(BoardGeometry geometry, int[] lineValues)
+    {
+        int lineLength = geometry.getLineLength();
+        if (lineValues.length != (lineLength + 1) * (lineLength + 1))
+            throw new IllegalArgumentException("Expected " + (lineLength + 1) * (lineLength + 1) + " line values");
+
+        mGeometry = geometry;
+        mLineValues = lineValues;
+        mWordCount = geometry.getWordCount();
+        mWords = new long[PLAYERS.length][mWordCount];
+        mLineCounts = new int[PLAYERS.length][geometry.getLineCount()];
+        mMoves = new int[geometry.getCellCount()];
+        mPlayerToMove = Player.X;
+    }
+
+    /**
+     * Replace the contents of the board with a position and forget the moves made so far.
+     *
+     * @param position a position with the same geometry
+     */
+    public void setPosition(Position position)
+    {
+        if (!mGeometry.equals(position.getGeometry()))
+            throw new IllegalArgumentException("Expected a " + mGeometry + " position");
+
+        position.copyWords(Player.X, mWords[Player.X.ordinal()]);
+        position.copyWords(Player.O, mWords[Player.O.ordinal()]);
+        mMoveCount = 0;
+        mMarkerCount = mGeometry.getCellCount() - position.getEmptyCount();
+        mPlayerToMove = position.getPlayerToMove();
+
+        int lineLength = mGeometry.getLineLength();
+        for (Player player : PLAYERS)
+        {
+            long[] words = mWords[player.ordinal()];
+            int[] lineCounts = mLineCounts[player.ordinal()];
+            int completeLineCount = 0;
+            for (int line = 0; line < lineCounts.length; line++)
+            {
+                int count = 0;
+                for (int i = 0; i < mWordCount; i++)
+                    count += Long.bitCount(words[i] & mGeometry.getLineMask(line, i));
+                lineCounts[line] = count;
+                if (count == lineLength)
+                    completeLineCount++;
+            }
+            mCompleteLineCounts[player.ordinal()] = completeLineCount;
+        }
+
+        int[] xLineCounts = mLineCounts[Player.X.ordinal()];
+        int[] oLineCounts = mLineCounts[Player.O.ordinal()];
+        mScore = 0;
+        for (int[] threatLineCounts : mThreatLineCounts)
+            Arrays.fill(threatLineCounts, 0);
+        for (int line = 0; line < xLineCounts.length; line++)
+        {
+            mScore += mLineValues[xLineCounts[line] * (lineLength + 1) + oLineCounts[line]];
+            countThreatLine(xLineCounts[line], oLineCounts[line], 1);
+        }
+
+        Zobrist zobrist = mGeometry.getZobrist();
+        BoardSymmetry symmetry = mGeometry.getSymmetry();
+        for (int s = 0; s < BoardSymmetry.SYMMETRY_COUNT; s++)
+        {
+            long hash = 0;
+            for (Player player : PLAYERS)
+            {
+                long[] words = mWords[player.ordinal()];
+                for (int i = 0; i < mWordCount; i++)
+                {
+                    for (long bits = words[i]; bits != 0; bits &= bits - 1)
+                    {
+                        int cell = i * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits);
+                        hash ^= zobrist.getKey(player, symmetry.mapCell(s, cell));
+                    }
+                }
+            }
+            mSymmetryHashes[s] = hash;
+        }
+    }
+
+    /**
+     * Take an immutable snapshot of the board.
+     *
+     * @return position
+     */
+    public Position toPosition()
+    {
+        return new Position(mGeometry, mWords[Player.X.ordinal()], mWords[Player.O.ordinal()]);
+    }
+
+    /**
+     * Place the marker of the player to move on a blank cell.
+     *
+     * @param cell
+     */
+    public void make(int cell)
+    {
+        Player player = mPlayerToMove;
+        Bits.set(mWords[player.ordinal()], cell);
+        mMoves[mMoveCount++] = cell;
+        mMarkerCount++;
+        mPlayerToMove = player.getOpponent();
+        updateHashes(player, cell);
+
+        updateLines(player, cell, 1);
+    }
+
+    /**
+     * Take back the last move made.
+     */
+    public void unmake()
+    {
+        int cell = mMoves[--mMoveCount];
+        Player player = mPlayerToMove.getOpponent();
+        Bits.clear(mWords[player.ordinal()], cell);
+        mMarkerCount--;
+        mPlayerToMove = player;
+        updateHashes(player, cell);
+
+        updateLines(player, cell, -1);
+    }
+
+    /**
+     * Add or remove a marker in the counts and score of the lines through its cell.
+     *
+     * @param change 1 when the marker is placed, -1 when it is removed
+     */
+    private void updateLines(Player player, int cell, int change)
+    {
+        int lineLength = mGeometry.getLineLength();
+        int[] xLineCounts = mLineCounts[Player.X.ordinal()];
+        int[] oLineCounts = mLineCounts[Player.O.ordinal()];
+        int[] lineCounts = (player == Player.X) ? xLineCounts : oLineCounts;
+        for (int line : mGeometry.getCellLines(cell))
+        {
+            mScore -= mLineValues[xLineCounts[line] * (lineLength + 1) + oLineCounts[line]];
+            countThreatLine(xLineCounts[line], oLineCounts[line], -1);
+
+            if (lineCounts[line] == lineLength)
+                mCompleteLineCounts[player.ordinal()]--;
+            lineCounts[line] += change;
+            if (lineCounts[line] == lineLength)
+                mCompleteLineCounts[player.ordinal()]++;
+
+            mScore += mLineValues[xLineCounts[line] * (lineLength + 1) + oLineCounts[line]];
+            countThreatLine(xLineCounts[line], oLineCounts[line], 1);
+        }
+    }
+
+    /**
+     * Add or remove a line in the threat line counts of the player it is a threat line of, if
+     * any.
+     *
+     * @param xCount X markers on the line
+     * @param oCount O markers on the line
+     * @param change 1 to add the line, -1 to remove it
+     */
+    private void countThreatLine(int xCount, int oCount, int change)
+    {
+        if (xCount != 0 && oCount != 0)
+            return;
+
+        int count = xCount + oCount;
+        int missing = mGeometry.getLineLength() - count;
+        if (count != 0 && missing >= 1 && missing <= MAX_THREAT_MISSING)
+            mThreatLineCounts[(xCount != 0) ? Player.X.ordinal() : Player.O.ordinal()][missing] += change;
+    }
+
+    /**
+     * Toggle a marker in the hash of the board and of its symmetric versions.
+     */
+    private void updateHashes(Player player, int cell)
+    {
+        Zobrist zobrist = mGeometry.getZobrist();
+        BoardSymmetry symmetry = mGeometry.getSymmetry();
+        for (int s = 0; s < BoardSymmetry.SYMMETRY_COUNT; s++)
+            mSymmetryHashes[s] ^= zobrist.getKey(player, symmetry.mapCell(s, cell));
+    }
+
+    /**
+     * Getter for the rules of the board.
+     *
+     * @return geometry
+     */
+    public BoardGeometry getGeometry()
+    {
+        return mGeometry;
+    }
+
+    /**
+     * Get the player who places the next marker.
+     *
+     * @return the player to move
+     */
+    public Player getPlayerToMove()
+    {
+        return mPlayerToMove;
+    }
+
+    /**
+     * Get the Zobrist hash of the board.
+     *
+     * @return hash
+     */
+    public long getHash()
+    {
+        return mSymmetryHashes[BoardSymmetry.IDENTITY];
+    }
+
+    /**
+     * Get the heuristic score of the board for X, the sum of the line values of every line.
+     *
+     * @return score
+     */
+    public long getScore()
+    {
+        return mScore;
+    }
+
+    /**
+     * Get the number of markers on the board.
+     *
+     * @return marker count
+     */
+    public int getMarkerCount()
+    {
+        return mMarkerCount;
+    }
+
+    /**
+     * Get the number of blank cells.
+     *
+     * @return blank cell count
+     */
+    public int getEmptyCount()
+    {
+        return mGeometry.getCellCount() - mMarkerCount;
+    }
+
+    /**
+     * Check if a cell is blank.
+     *
+     * @param cell
+     * @return true if blank
+     */
+    public boolean isEmpty(int cell)
+    {
+        return !Bits.isSet(mWords[0], cell) && !Bits.isSet(mWords[1], cell);
+    }
+
+    /**
+     * Check if the given player has completed a winning line.
+     *
+     * @param player
+     * @return true if the player has won
+     */
+    public boolean hasWon(Player player)
+    {
+        return mCompleteLineCounts[player.ordinal()] != 0;
+    }
+
+    /**
+     * Check if the last move made completed a winning line, looking only at the lines through
+     * its cell.
+     *
+     * @return true if the last move won, false if it did not or no move was made since the
+     * board was set
+     */
+    public boolean isLastMoveWin()
+    {
+        if (mMoveCount == 0)
+            return false;
+
+        int cell = mMoves[mMoveCount - 1];
+        int[] lineCounts = mLineCounts[mPlayerToMove.getOpponent().ordinal()];
+        for (int line : mGeometry.getCellLines(cell))
+        {
+            if (lineCounts[line] == mGeometry.getLineLength())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Count a player's markers on a winning line.
+     *
+     * @param player
+     * @param line
+     * @return marker count
+     */
+    public int countLineMarkers(Player player, int line)
+    {
+        return mLineCounts[player.ordinal()][line];
+    }
+
+    /**
+     * Get the number of threat lines of a player, kept up to date as moves are made.
+     *
+     * @param player
+     * @param missing number of markers the lines miss, 1 to MAX_THREAT_MISSING
+     * @return line count
+     */
+    public int getThreatLineCount(Player player, int missing)
+    {
+        return mThreatLineCounts[player.ordinal()][missing];
+    }
+
+    /**
+     * Find the blank cells that would complete a winning line for the given player.
+     *
+     * @param player
+     * @param cells  destination bitset, cleared first; may be null to only count
+     * @return the number of lines that can be completed
+     */
+    public int getWinningCells(Player player, long[] cells)
+    {
+        if (null == cells)
+            return getThreatLineCount(player, 1);
+        return getThreatCells(player, 1, cells);
+    }
+
+    /**
+     * Find the blank cells of the threat lines of a player, the cells where the player's
+     * next marker brings a line closer to complete.
+     *
+     * @param player
+     * @param missing number of markers the lines miss, 1 to MAX_THREAT_MISSING
+     * @param cells   destination bitset, cleared first; may be null to only count
+     * @return the number of threat lines
+     */
+    public int getThreatCells(Player player, int missing, long[] cells)
+    {
+        if (null != cells)
+            clear(cells);
+        if (getThreatLineCount(player, missing) == 0)
+            return 0;
+
+        int almostComplete = mGeometry.getLineLength() - missing;
+        int[] lineCounts = mLineCounts[player.ordinal()];
+        int[] opponentLineCounts = mLineCounts[player.getOpponent().ordinal()];
+        int lineCount = 0;
+        for (int line = 0; line < lineCounts.length; line++)
+        {
+            if (lineCounts[line] != almostComplete || opponentLineCounts[line] != 0)
+                continue;
+
+            lineCount++;
+            if (null == cells)
+                continue;
+
+            for (int cell : mGeometry.getLineCells(line))
+            {
+                if (isEmpty(cell))
+                    Bits.set(cells, cell);
+            }
+        }
+        return lineCount;
+    }
+
+    /**
+     * Find the blank cells worth searching. On boards too large to search every cell, only the
+     * cells next to an existing marker are used, or the first cell of the move order when the
+     * board is empty.
+     *
+     * @param cells destination bitset
+     */
+    public void getCandidateCells(long[] cells)
+    {
+        long[] xWords = mWords[0];
+        long[] oWords = mWords[1];
+
+        if (!mGeometry.isMoveNeighborhoodRestricted())
+        {
+            for (int i = 0; i < mWordCount; i++)
+                cells[i] = ~(xWords[i] | oWords[i]);
+            cells[mWordCount - 1] &= mGeometry.getLastWordMask();
+            return;
+        }
+
+        clear(cells);
+        if (mMarkerCount == 0)
+        {
+            Bits.set(cells, mGeometry.getMoveOrder()[0]);
+            return;
+        }
+
+        for (int i = 0; i < mWordCount; i++)
+        {
+            for (long bits = xWords[i] | oWords[i]; bits != 0; bits &= bits - 1)
+            {
+                int cell = i * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits);
+                for (int j = 0; j < mWordCount; j++)
+                    cells[j] |= mGeometry.getNeighborMask(cell, j);
+            }
+        }
+        for (int i = 0; i < mWordCount; i++)
+            cells[i] &= ~(xWords[i] | oWords[i]);
+    }
+
+    /**
+     * Find the symmetries that leave the board unchanged.
+     *
+     * @return mask with bit s set when symmetry s maps the board onto itself
+     */
+    public int getPreservedSymmetries()
+    {
+        int symmetries = 1 << BoardSymmetry.IDENTITY;
+        long hash = mSymmetryHashes[BoardSymmetry.IDENTITY];
+        for (int s = 1; s < BoardSymmetry.SYMMETRY_COUNT; s++)
+        {
+            // Equal hashes almost always mean equal boards, but confirm before relying on it
+            if (mSymmetryHashes[s] == hash
+                    && mGeometry.getSymmetry().isPreserved(s, mWords[0], mWords[1]))
+                symmetries |= 1 << s;
+        }
+        return symmetries;
+    }
+
+    /**
+     * Clear a bitset.
+     */
+    private static void clear(long[] cells)
+    {
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = 0;
+    }
+}
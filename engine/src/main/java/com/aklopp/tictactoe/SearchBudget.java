@@ -0,0 +1,97 @@
+package com.aklopp.tictactoe;
+
+/**
+ * Limits on how long the game AI may search for a single move. With a limited budget the AI
+ * deepens its search one move at a time and plays the best move of the deepest search it
+ * completed, so a move is always ready when the budget runs out.
+ */
+public final class SearchBudget
+{
+    /**
+     * No time or node limit, the AI searches to its maximum depth.
+     */
+    public static final SearchBudget UNLIMITED = new SearchBudget(0, 0);
+
+    /**
+     * Wall-clock time allowed for the move in nanoseconds, 0 for no limit.
+     */
+    private final long mTimeLimitNanos;
+
+    /**
+     * Positions the search may visit, 0 for no limit.
+     */
+    private final long mNodeLimit;
+
+    /**
+     * Constructor
+     *
+     * @param timeLimitMillis wall-clock time allowed for the move, 0 for no limit
+     * @param nodeLimit       positions the search may visit, 0 for no limit
+     */
+    public SearchBudget(long timeLimitMillis, long nodeLimit)
+    {
+        if (timeLimitMillis < 0 || nodeLimit < 0)
+            throw new IllegalArgumentException("Negative search budget: " + timeLimitMillis + " ms, " + nodeLimit + " nodes");
+
+        this.mTimeLimitNanos = timeLimitMillis * 1000000L;
+        this.mNodeLimit = nodeLimit;
+    }
+
+    /**
+     * Get a budget limited only by wall-clock time.
+     *
+     * @param timeLimitMillis
+     * @return budget
+     */
+    public static SearchBudget ofMillis(long timeLimitMillis)
+    {
+        return new SearchBudget(timeLimitMillis, 0);
+    }
+
+    /**
+     * Get a budget limited only by the number of positions visited.
+     *
+     * @param nodeLimit
+     * @return budget
+     */
+    public static SearchBudget ofNodes(long nodeLimit)
+    {
+        return new SearchBudget(0, nodeLimit);
+    }
+
+    /**
+     * Check if either limit is set.
+     *
+     * @return true if the search may be cut short
+     */
+    public boolean isLimited()
+    {
+        return mTimeLimitNanos != 0 || mNodeLimit != 0;
+    }
+
+    /**
+     * Get the time allowed for the move.
+     *
+     * @return nanoseconds, 0 for no limit
+     */
+    public long getTimeLimitNanos()
+    {
+        return mTimeLimitNanos;
+    }
+
+    /**
+     * Get the number of positions the search may visit.
+     *
+     * @return node count, 0 for no limit
+     */
+    public long getNodeLimit()
+    {
+        return mNodeLimit;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "SearchBudget(" + (mTimeLimitNanos / 1000000L) + " ms, " + mNodeLimit + " nodes)";
+    }
+}
@@ -0,0 +1,215 @@
+package com.aklopp.tictactoe;
+
+/**
+ * Totals and distributions of the SearchStats of every move selected by an AI.
+ * Updated once per move, so it is cheap enough to leave on. Thread safe, so the app or a
+ * reporter can read it while the AI searches on another thread.
+ */
+public final class SearchMetrics
+{
+    /**
+     * Time to select each move, in microseconds.
+     */
+    private final Histogram mLatencyMicros = new Histogram();
+
+    /**
+     * Positions visited for each searched move.
+     */
+    private final Histogram mNodesPerMove = new Histogram();
+
+    /**
+     * Deepest completed search of each searched move.
+     */
+    private final Histogram mCompletedDepths = new Histogram();
+
+    private long mMoveCount;
+    private long mSolvedMoveCount;
+    private long mExpandedNodeCount;
+    private long mCutoffCount;
+    private long mTableProbeCount;
+    private long mTableHitCount;
+
+    /**
+     * The stats of the last move, null if none yet.
+     */
+    private SearchStats mLastStats;
+
+    /**
+     * Add the stats of a move.
+     *
+     * @param stats
+     */
+    public synchronized void record(SearchStats stats)
+    {
+        mMoveCount++;
+        mLatencyMicros.record(stats.getElapsedNanos() / 1000);
+        mLastStats = stats;
+        if (stats.isSolved())
+        {
+            mSolvedMoveCount++;
+            return;
+        }
+
+        mNodesPerMove.record(stats.getNodeCount());
+        mCompletedDepths.record(stats.getCompletedDepth());
+        mExpandedNodeCount += stats.getExpandedNodeCount();
+        mCutoffCount += stats.getCutoffCount();
+        mTableProbeCount += stats.getTableProbeCount();
+        mTableHitCount += stats.getTableHitCount();
+    }
+
+    /**
+     * Add the moves counted by other metrics, e.g. to combine the AIs of several threads.
+     *
+     * @param other
+     */
+    public void add(SearchMetrics other)
+    {
+        SearchMetrics snapshot = other.copy();
+        synchronized (this)
+        {
+            mLatencyMicros.add(snapshot.mLatencyMicros);
+            mNodesPerMove.add(snapshot.mNodesPerMove);
+            mCompletedDepths.add(snapshot.mCompletedDepths);
+            mMoveCount += snapshot.mMoveCount;
+            mSolvedMoveCount += snapshot.mSolvedMoveCount;
+            mExpandedNodeCount += snapshot.mExpandedNodeCount;
+            mCutoffCount += snapshot.mCutoffCount;
+            mTableProbeCount += snapshot.mTableProbeCount;
+            mTableHitCount += snapshot.mTableHitCount;
+            if (null != snapshot.mLastStats)
+                mLastStats = snapshot.mLastStats;
+        }
+    }
+
+    /**
+     * Copy the metrics as they are now.
+     *
+     * @return metrics that no longer change with this one
+     */
+    public synchronized SearchMetrics copy()
+    {
+        SearchMetrics copy = new SearchMetrics();
+        copy.mLatencyMicros.add(mLatencyMicros);
+        copy.mNodesPerMove.add(mNodesPerMove);
+        copy.mCompletedDepths.add(mCompletedDepths);
+        copy.mMoveCount = mMoveCount;
+        copy.mSolvedMoveCount = mSolvedMoveCount;
+        copy.mExpandedNodeCount = mExpandedNodeCount;
+        copy.mCutoffCount = mCutoffCount;
+        copy.mTableProbeCount = mTableProbeCount;
+        copy.mTableHitCount = mTableHitCount;
+        copy.mLastStats = mLastStats;
+        return copy;
+    }
+
+    /**
+     * Get the number of moves selected.
+     *
+     * @return move count
+     */
+    public synchronized long getMoveCount()
+    {
+        return mMoveCount;
+    }
+
+    /**
+     * Get the number of moves taken from the perfect play table without searching.
+     *
+     * @return solved move count
+     */
+    public synchronized long getSolvedMoveCount()
+    {
+        return mSolvedMoveCount;
+    }
+
+    /**
+     * Get the distribution of the time to select a move.
+     *
+     * @return a copy of the histogram, in microseconds
+     */
+    public synchronized Histogram getLatencyMicros()
+    {
+        return mLatencyMicros.copy();
+    }
+
+    /**
+     * Get the distribution of the positions visited per searched move.
+     *
+     * @return a copy of the histogram
+     */
+    public synchronized Histogram getNodesPerMove()
+    {
+        return mNodesPerMove.copy();
+    }
+
+    /**
+     * Get the distribution of the deepest completed search per searched move.
+     *
+     * @return a copy of the histogram
+     */
+    public synchronized Histogram getCompletedDepths()
+    {
+        return mCompletedDepths.copy();
+    }
+
+    /**
+     * Get the fraction of expanded positions cut off before searching every move, over all
+     * moves.
+     *
+     * @return 0 to 1
+     */
+    public synchronized double getCutoffRate()
+    {
+        return (mExpandedNodeCount == 0) ? 0 : (double) mCutoffCount / mExpandedNodeCount;
+    }
+
+    /**
+     * Get the fraction of transposition table lookups that found their position, over all
+     * moves.
+     *
+     * @return 0 to 1
+     */
+    public synchronized double getTableHitRate()
+    {
+        return (mTableProbeCount == 0) ? 0 : (double) mTableHitCount / mTableProbeCount;
+    }
+
+    /**
+     * Get the stats of the last move selected.
+     *
+     * @return stats, null if no move was selected yet
+     */
+    public synchronized SearchStats getLastStats()
+    {
+        return mLastStats;
+    }
+
+    /**
+     * Forget every move counted.
+     */
+    public synchronized void reset()
+    {
+        mLatencyMicros.clear();
+        mNodesPerMove.clear();
+        mCompletedDepths.clear();
+        mMoveCount = 0;
+        mSolvedMoveCount = 0;
+        mExpandedNodeCount = 0;
+        mCutoffCount = 0;
+        mTableProbeCount = 0;
+        mTableHitCount = 0;
+        mLastStats = null;
+    }
+
+    @Override
+    public synchronized String toString()
+    {
+        long nodeCount = mNodesPerMove.getSum();
+        double seconds = mLatencyMicros.getSum() / 1e6;
+        return String.format("%d moves, %d solved, %d nodes, %.0f nodes/sec, cutoff rate %.2f, table hit rate %.2f%n"
+                        + "  latency us: %s%n  nodes/move: %s%n  depth:      %s",
+                mMoveCount, mSolvedMoveCount, nodeCount, (seconds == 0) ? 0 : nodeCount / seconds,
+                getCutoffRate(), getTableHitRate(), mLatencyMicros, mNodesPerMove, mCompletedDepths);
+    }
+}
@@ -0,0 +1,168 @@
+package com.aklopp.tictactoe;
+
+/**
+ * What the AI did to select one move. Counts are summed over every search thread; the
+ * transposition table counts are approximate when several threads share the table.
+ */
+public final class SearchStats
+{
+    /**
+     * True if the move came from the perfect play table without searching.
+     */
+    private final boolean mIsSolved;
+
+    private final long mElapsedNanos;
+    private final int mThreadCount;
+    private final int mCompletedDepth;
+    private final long mNodeCount;
+    private final long mExpandedNodeCount;
+    private final long mCutoffCount;
+    private final long mTableProbeCount;
+    private final long mTableHitCount;
+
+    /**
+     * Constructor
+     *
+     * @param isSolved          true if the move came from the perfect play table
+     * @param elapsedNanos      time taken to select the move
+     * @param threadCount       number of threads that searched
+     * @param completedDepth    deepest search completed
+     * @param nodeCount         positions visited
+     * @param expandedNodeCount positions whose moves were searched
+     * @param cutoffCount       positions whose remaining moves were pruned by a beta cutoff
+     * @param tableProbeCount   transposition table lookups
+     * @param tableHitCount     transposition table lookups that found their position
+     */
+    public SearchStats(boolean isSolved, long elapsedNanos, int threadCount, int completedDepth, long nodeCount,
+                       long expandedNodeCount, long cutoffCount, long tableProbeCount, long tableHitCount)
+    {
+        mIsSolved = isSolved;
+        mElapsedNanos = elapsedNanos;
+        mThreadCount = threadCount;
+        mCompletedDepth = completedDepth;
+        mNodeCount = nodeCount;
+        mExpandedNodeCount = expandedNodeCount;
+        mCutoffCount = cutoffCount;
+        mTableProbeCount = tableProbeCount;
+        mTableHitCount = tableHitCount;
+    }
+
+    /**
+     * Check if the move came from the perfect play table without searching.
+     *
+     * @return true if solved
+     */
+    public boolean isSolved()
+    {
+        return mIsSolved;
+    }
+
+    /**
+     * Get the time taken to select the move.
+     *
+     * @return nanoseconds
+     */
+    public long getElapsedNanos()
+    {
+        return mElapsedNanos;
+    }
+
+    /**
+     * Get the number of threads that searched.
+     *
+     * @return thread count
+     */
+    public int getThreadCount()
+    {
+        return mThreadCount;
+    }
+
+    /**
+     * Get the deepest search completed, 0 if the move was solved or no search completed.
+     *
+     * @return number of moves searched
+     */
+    public int getCompletedDepth()
+    {
+        return mCompletedDepth;
+    }
+
+    /**
+     * Get the number of positions visited.
+     *
+     * @return node count
+     */
+    public long getNodeCount()
+    {
+        return mNodeCount;
+    }
+
+    /**
+     * Get the number of positions whose moves were searched, rather than scored directly.
+     *
+     * @return expanded node count
+     */
+    public long getExpandedNodeCount()
+    {
+        return mExpandedNodeCount;
+    }
+
+    /**
+     * Get the number of positions whose remaining moves were pruned by a beta cutoff.
+     *
+     * @return cutoff count
+     */
+    public long getCutoffCount()
+    {
+        return mCutoffCount;
+    }
+
+    /**
+     * Get the number of transposition table lookups.
+     *
+     * @return probe count
+     */
+    public long getTableProbeCount()
+    {
+        return mTableProbeCount;
+    }
+
+    /**
+     * Get the number of transposition table lookups that found their position.
+     *
+     * @return hit count
+     */
+    public long getTableHitCount()
+    {
+        return mTableHitCount;
+    }
+
+    /**
+     * Get the fraction of expanded positions that were cut off before searching every move.
+     *
+     * @return 0 to 1
+     */
+    public double getCutoffRate()
+    {
+        return (mExpandedNodeCount == 0) ? 0 : (double) mCutoffCount / mExpandedNodeCount;
+    }
+
+    /**
+     * Get the fraction of transposition table lookups that found their position.
+     *
+     * @return 0 to 1
+     */
+    public double getTableHitRate()
+    {
+        return (mTableProbeCount == 0) ? 0 : (double) mTableHitCount / mTableProbeCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (mIsSolved)
+            return String.format("solved in %.3f ms", mElapsedNanos / 1e6);
+        return String.format("depth %d, %d nodes in %.3f ms on %d threads, cutoff rate %.2f, table hit rate %.2f",
+                mCompletedDepth, mNodeCount, mElapsedNanos / 1e6, mThreadCount, getCutoffRate(), getTableHitRate());
+    }
+}
@@ -0,0 +1,587 @@
+package com.aklopp.tictactoe;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent game outcome counts, broken down by board and by the marker the outcome is
+ * counted for.
+ * The counts live in memory, so recording a game or reading a count never touches the disk.
+ * Recorded games are batched and appended to a journal on a background thread, and once the
+ * journal is long enough the counts are written to a snapshot and the journal starts over.
+ * <p>
+ * The snapshot and the journal both carry a generation. The journal is only replayed on top of
+ * the snapshot of the same generation, so a crash between writing a new snapshot and starting
+ * its journal can't count the old journal twice. A journal entry cut short by a crash is
+ * dropped.
+ * <p>
+ * Thread safe. Use a single store per directory.
+ */
+public final class StatsStore
+{
+    /**
+     * Counts not split by marker, such as those kept before markers were recorded.
+     */
+    private static final int UNKNOWN_MARKER = 2;
+
+    /**
+     * How long recorded games wait to be written, so several games share one write.
+     */
+    private static final long BATCH_DELAY_MILLIS = 2000;
+
+    /**
+     * Journal entries written before the journal is compacted into a new snapshot.
+     */
+    private static final int COMPACTION_ENTRY_COUNT = 4096;
+
+    /**
+     * "TTTS" at the start of every snapshot.
+     */
+    private static final int SNAPSHOT_MAGIC = 0x54545453;
+
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final String SNAPSHOT_FILE_NAME = "stats.snapshot";
+    private static final String JOURNAL_FILE_NAME = "stats.journal";
+
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    /**
+     * Files of the store.
+     */
+    private final File mSnapshotFile;
+    private final File mJournalFile;
+
+    /**
+     * Writes the batches and snapshots, one at a time.
+     */
+    private final ScheduledThreadPoolExecutor mWriter;
+
+    /**
+     * Outcome counts indexed by Outcome ordinal, keyed by board and marker, see getKey.
+     * Guarded by the store.
+     */
+    private final Map<Integer, long[]> mCounts = new HashMap<>();
+
+    /**
+     * Journal entries of the games recorded since the last write. Guarded by the store.
+     */
+    private ByteArrayOutputStream mPending = new ByteArrayOutputStream();
+    private int mPendingEntryCount;
+
+    /**
+     * True while a write is scheduled. Guarded by the store.
+     */
+    private boolean mIsWriteScheduled;
+
+    /**
+     * True if the next write must replace the snapshot, after clear. Guarded by the store.
+     */
+    private boolean mIsCompactionRequested;
+
+    /**
+     * Generation of the snapshot and journal on disk. Only used on the writer thread.
+     */
+    private long mGeneration;
+
+    /**
+     * Entries in the journal on disk. Only used on the writer thread.
+     */
+    private int mJournalEntryCount;
+
+    /**
+     * The listener for failed writes, null if none.
+     */
+    private volatile OnWriteErrorListener mOnWriteErrorListener;
+
+    /**
+     * Constructor, loads the counts stored in the directory.
+     *
+     * @param directory where the snapshot and journal are kept, created if needed
+     * @throws IOException if the stored counts can't be read
+     */
+    public StatsStore(File directory) throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+        mSnapshotFile = new File(directory, SNAPSHOT_FILE_NAME);
+        mJournalFile = new File(directory, JOURNAL_FILE_NAME);
+
+        load();
+
+        mWriter = new ScheduledThreadPoolExecutor(1, new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "StatsStore");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        // Writes scheduled for later are dropped on close, which writes everything itself
+        mWriter.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+
+        synchronized (this)
+        {
+            if (mIsCompactionRequested)
+                scheduleWrite(0);
+        }
+    }
+
+    /**
+     * Count a completed game. Written to disk in the background.
+     *
+     * @param geometry the board
+     * @param marker   the marker the outcome is counted for
+     * @param outcome  the outcome for marker
+     */
+    public void record(BoardGeometry geometry, Player marker, Outcome outcome)
+    {
+        add(geometry, marker, outcome, 1);
+    }
+
+    /**
+     * Add to the count of an outcome. Written to disk in the background.
+     *
+     * @param geometry the board
+     * @param marker   the marker the outcome is counted for, null if not known
+     * @param outcome  the outcome for marker
+     * @param count    number of games
+     */
+    public synchronized void add(BoardGeometry geometry, Player marker, Outcome outcome, long count)
+    {
+        int key = getKey(geometry.getDimension(), geometry.getLineLength(), getMarkerCode(marker));
+        getCounts(key)[outcome.ordinal()] += count;
+
+        mPending.write(key >>> 16);
+        mPending.write(key >>> 8);
+        mPending.write(((key & 0xFF) << 2) | outcome.ordinal());
+        writeVarLong(mPending, count);
+        mPendingEntryCount++;
+        scheduleWrite(BATCH_DELAY_MILLIS);
+    }
+
+    /**
+     * Reset every count. Written to disk in the background.
+     */
+    public synchronized void clear()
+    {
+        mCounts.clear();
+        mPending = new ByteArrayOutputStream();
+        mPendingEntryCount = 0;
+        mIsCompactionRequested = true;
+        scheduleWrite(0);
+    }
+
+    /**
+     * Get the number of games with an outcome.
+     *
+     * @param outcome
+     * @return count over every board and marker
+     */
+    public long getCount(Outcome outcome)
+    {
+        return getCount(null, null, outcome);
+    }
+
+    /**
+     * Get the number of games with an outcome on a board, or for a marker.
+     *
+     * @param geometry the board, null for every board
+     * @param marker   the marker the outcome is counted for, null for every marker
+     * @param outcome
+     * @return count
+     */
+    public synchronized long getCount(BoardGeometry geometry, Player marker, Outcome outcome)
+    {
+        long count = 0;
+        for (Map.Entry<Integer, long[]> entry : mCounts.entrySet())
+        {
+            int key = entry.getKey();
+            if (null != geometry && (key >>> 8) != ((geometry.getDimension() << 8) | geometry.getLineLength()))
+                continue;
+            if (null != marker && (key & 0xFF) != getMarkerCode(marker))
+                continue;
+            count += entry.getValue()[outcome.ordinal()];
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of games counted.
+     *
+     * @return count over every board, marker and outcome
+     */
+    public long getGameCount()
+    {
+        long count = 0;
+        for (Outcome outcome : OUTCOMES)
+            count += getCount(outcome);
+        return count;
+    }
+
+    /**
+     * Write the pending games now, without waiting for the rest of the batch. Returns at once.
+     */
+    public synchronized void flush()
+    {
+        scheduleWrite(0);
+    }
+
+    /**
+     * Write the pending games and wait until they are on the disk. Blocks, so unlike flush it
+     * must not be called on the UI thread.
+     *
+     * @throws IOException          if the games could not be written; they stay counted in
+     *                              memory and are written again with the next snapshot
+     * @throws InterruptedException if interrupted while waiting for the write
+     */
+    public void sync() throws IOException, InterruptedException
+    {
+        Future<IOException> result = mWriter.submit(new Callable<IOException>()
+        {
+            @Override
+            public IOException call()
+            {
+                return write();
+            }
+        });
+
+        IOException error;
+        try
+        {
+            error = result.get();
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("Could not write the counts", e.getCause());
+        }
+        if (null != error)
+            throw error;
+    }
+
+    /**
+     * Sets the listener for failed writes. The counts stay in memory after a failure and are
+     * written again with the next snapshot.
+     *
+     * @param listener
+     */
+    public void setOnWriteErrorListener(OnWriteErrorListener listener)
+    {
+        this.mOnWriteErrorListener = listener;
+    }
+
+    /**
+     * Stop the background thread and write the pending games. Blocks until they are written.
+     *
+     * @throws InterruptedException if interrupted while waiting for a write in progress
+     */
+    public void close() throws InterruptedException
+    {
+        mWriter.shutdown();
+        mWriter.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        write();
+    }
+
+    /**
+     * Schedule a write, unless one is already scheduled.
+     */
+    private void scheduleWrite(long delayMillis)
+    {
+        if (mIsWriteScheduled && delayMillis > 0)
+            return;
+
+        mIsWriteScheduled = true;
+        mWriter.schedule(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                write();
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Append the pending games to the journal, or replace the snapshot. Runs on the writer.
+     *
+     * @return the error if the write failed, null if it succeeded
+     */
+    private IOException write()
+    {
+        byte[] entries;
+        int entryCount;
+        boolean isCompaction;
+        Map<Integer, long[]> counts = null;
+        synchronized (this)
+        {
+            mIsWriteScheduled = false;
+            entries = mPending.toByteArray();
+            entryCount = mPendingEntryCount;
+            mPending = new ByteArrayOutputStream();
+            mPendingEntryCount = 0;
+
+            isCompaction = mIsCompactionRequested
+                    || mJournalEntryCount + entryCount >= COMPACTION_ENTRY_COUNT;
+            mIsCompactionRequested = false;
+            if (isCompaction)
+                counts = copyCounts();
+        }
+
+        try
+        {
+            if (isCompaction)
+                compact(counts);
+            else if (entryCount > 0)
+                appendToJournal(entries, entryCount);
+            return null;
+        }
+        catch (IOException e)
+        {
+            // Keep counting in memory, the next compaction writes everything again
+            synchronized (this)
+            {
+                mIsCompactionRequested = true;
+            }
+
+            OnWriteErrorListener listener = mOnWriteErrorListener;
+            if (null != listener)
+                listener.onWriteError(e);
+            return e;
+        }
+    }
+
+    /**
+     * Append entries to the journal.
+     */
+    private void appendToJournal(byte[] entries, int entryCount) throws IOException
+    {
+        FileOutputStream output = new FileOutputStream(mJournalFile, true);
+        try
+        {
+            output.write(entries);
+            output.getFD().sync();
+        }
+        finally
+        {
+            output.close();
+        }
+        mJournalEntryCount += entryCount;
+    }
+
+    /**
+     * Replace the snapshot with the given counts and start an empty journal.
+     */
+    private void compact(Map<Integer, long[]> counts) throws IOException
+    {
+        long generation = mGeneration + 1;
+        File temporary = new File(mSnapshotFile.getPath() + ".tmp");
+        FileOutputStream file = new FileOutputStream(temporary);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file));
+        try
+        {
+            output.writeInt(SNAPSHOT_MAGIC);
+            output.writeInt(SNAPSHOT_VERSION);
+            output.writeLong(generation);
+            output.writeInt(counts.size());
+            for (Map.Entry<Integer, long[]> entry : counts.entrySet())
+            {
+                output.writeInt(entry.getKey());
+                for (long count : entry.getValue())
+                    output.writeLong(count);
+            }
+            output.flush();
+            file.getFD().sync();
+        }
+        finally
+        {
+            output.close();
+        }
+        if (!temporary.renameTo(mSnapshotFile))
+            throw new IOException("Could not replace " + mSnapshotFile);
+
+        // From here on the old journal no longer matches the snapshot's generation
+        DataOutputStream journal = new DataOutputStream(new FileOutputStream(mJournalFile));
+        try
+        {
+            journal.writeLong(generation);
+        }
+        finally
+        {
+            journal.close();
+        }
+        mGeneration = generation;
+        mJournalEntryCount = 0;
+    }
+
+    /**
+     * Read the snapshot and replay the journal on top of it.
+     */
+    private void load() throws IOException
+    {
+        if (mSnapshotFile.exists())
+        {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(mSnapshotFile)));
+            try
+            {
+                if (input.readInt() != SNAPSHOT_MAGIC || input.readInt() != SNAPSHOT_VERSION)
+                    throw new IOException("Not a statistics snapshot: " + mSnapshotFile);
+                mGeneration = input.readLong();
+                int keyCount = input.readInt();
+                for (int i = 0; i < keyCount; i++)
+                {
+                    long[] counts = getCounts(input.readInt());
+                    for (int outcome = 0; outcome < OUTCOMES.length; outcome++)
+                        counts[outcome] = input.readLong();
+                }
+            }
+            finally
+            {
+                input.close();
+            }
+        }
+
+        DataInputStream input;
+        try
+        {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(mJournalFile)));
+        }
+        catch (FileNotFoundException e)
+        {
+            // Appending to a journal without a generation would lose it on the next load
+            mIsCompactionRequested = true;
+            return;
+        }
+        try
+        {
+            if (input.readLong() != mGeneration)
+            {
+                mIsCompactionRequested = true;
+                return;
+            }
+            int dimension;
+            while ((dimension = input.read()) >= 0)
+            {
+                int lineLength = input.readUnsignedByte();
+                int code = input.readUnsignedByte();
+                long count = readVarLong(input);
+                getCounts(getKey(dimension, lineLength, code >>> 2))[code & 0x3] += count;
+                mJournalEntryCount++;
+            }
+        }
+        catch (EOFException e)
+        {
+            // An entry cut short, rewrite the journal so new entries don't follow it
+            mIsCompactionRequested = true;
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    /**
+     * Get the counts of a key, adding them if needed. Call with the store locked.
+     */
+    private long[] getCounts(int key)
+    {
+        long[] counts = mCounts.get(key);
+        if (null == counts)
+        {
+            counts = new long[OUTCOMES.length];
+            mCounts.put(key, counts);
+        }
+        return counts;
+    }
+
+    /**
+     * Copy every count. Call with the store locked.
+     */
+    private Map<Integer, long[]> copyCounts()
+    {
+        Map<Integer, long[]> counts = new HashMap<>();
+        for (Map.Entry<Integer, long[]> entry : mCounts.entrySet())
+            counts.put(entry.getKey(), entry.getValue().clone());
+        return counts;
+    }
+
+    /**
+     * Pack a board and marker into a key: dimension, line length and marker code, a byte each.
+     */
+    private static int getKey(int dimension, int lineLength, int markerCode)
+    {
+        return (dimension << 16) | (lineLength << 8) | markerCode;
+    }
+
+    /**
+     * Get the code of a marker in keys.
+     */
+    private static int getMarkerCode(Player marker)
+    {
+        return (null == marker) ? UNKNOWN_MARKER : marker.ordinal();
+    }
+
+    /**
+     * Write an unsigned varint of 7 bits per byte, low bits first.
+     */
+    private static void writeVarLong(ByteArrayOutputStream output, long value)
+    {
+        while ((value & ~0x7FL) != 0)
+        {
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    /**
+     * Read an unsigned varint written by writeVarLong.
+     */
+    private static long readVarLong(InputStream input) throws IOException
+    {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7)
+        {
+            int b = input.read();
+            if (b < 0)
+                throw new EOFException();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed journal entry");
+    }
+
+    /**
+     * Interface to listen for failed writes.
+     */
+    public interface OnWriteErrorListener
+    {
+
+        /**
+         * Called on the writer thread, or the thread calling close, when the counts could not
+         * be written.
+         */
+        void onWriteError(IOException e);
+    }
+}
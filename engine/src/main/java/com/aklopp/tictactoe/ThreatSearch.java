@@ -0,0 +1,311 @@
+package com.aklopp.tictactoe;
+
+import java.util.Arrays;
+
+/**
+ * Threat-space search for boards too large to search every move, such as five in a row on
+ * 15 x 15. Only forcing moves are tried for the attacker: a four, which the defender must block
+ * on its one missing cell, or a three that sets up a double four, which the defender must
+ * answer on one of the cells of the attacker's threes or with a four of its own. With so few
+ * replies to consider a forced win many moves deep is found in a few thousand positions.
+ * <p>
+ * A win is only reported when every defender reply is refuted, so it is sound; a win that
+ * needs a quiet move, or a defender four the attacker can only block without a threat, is not
+ * found. Moves are made and undone on the board of the caller, which is left as it was.
+ */
+final class ThreatSearch
+{
+    /**
+     * The search checks the clock every TIME_CHECK_MASK + 1 positions.
+     */
+    private static final int TIME_CHECK_MASK = 0xFF;
+
+    /**
+     * The board searched.
+     */
+    private final SearchBoard mBoard;
+
+    /**
+     * The cells to try at each level of the search, reused so the search does not allocate.
+     */
+    private final long[][] mCellBuffers;
+
+    /**
+     * Scratch cells for merging the defender's fours into its replies.
+     */
+    private final long[] mScratchCells;
+
+    /**
+     * Positions the search in progress may visit, and the System.nanoTime() it must end by.
+     */
+    private long mNodeLimit;
+    private long mDeadlineNanos;
+
+    /**
+     * True once the search in progress has run out of budget and is unwinding.
+     */
+    private boolean mAborted;
+
+    /**
+     * The number of positions visited by the last search.
+     */
+    private long mNodeCount;
+
+    /**
+     * The first move of the win found by the search in progress.
+     */
+    private int mWinningMove;
+
+    /**
+     * Constructor
+     *
+     * @param board    the board to search, shared with the caller
+     * @param maxDepth the most attacker moves a search looks at
+     */
+    ThreatSearch(SearchBoard board, int maxDepth)
+    {
+        mBoard = board;
+
+        // An attacker and a defender level for every attacker move
+        int wordCount = board.getGeometry().getWordCount();
+        mCellBuffers = new long[2 * maxDepth + 1][wordCount];
+        mScratchCells = new long[wordCount];
+    }
+
+    /**
+     * Look for a forced win of the player to move, shortest first.
+     *
+     * @param maxDepth  the most attacker moves to look at, up to the one given to the constructor
+     * @param nodeLimit     positions the search may visit
+     * @param deadlineNanos System.nanoTime() the search must end by
+     * @return first move of the win, GameAI.NO_MOVE if none was found
+     */
+    int findForcedWin(int maxDepth, long nodeLimit, long deadlineNanos)
+    {
+        mNodeCount = 0;
+        mNodeLimit = nodeLimit;
+        mDeadlineNanos = deadlineNanos;
+        mAborted = false;
+        mWinningMove = GameAI.NO_MOVE;
+
+        int depthLimit = Math.min(maxDepth, mCellBuffers.length / 2);
+        for (int depth = 1; depth <= depthLimit && !mAborted; depth++)
+        {
+            if (isAttackerWin(depth, 0))
+                return mWinningMove;
+        }
+        return GameAI.NO_MOVE;
+    }
+
+    /**
+     * Getter for the number of positions visited by the last search.
+     *
+     * @return node count
+     */
+    long getNodeCount()
+    {
+        return mNodeCount;
+    }
+
+    /**
+     * Find the replies to a threat of a double four, which wins unless answered. The defender
+     * must put a marker on one of the attacker's threes or make a four of its own; any other
+     * move lets the attacker play the double four.
+     *
+     * @param attacker the player who moved last
+     * @param cells    receives the replies, cleared first
+     * @return true if the attacker threatens a double four and cells holds the replies
+     */
+    boolean getDefensiveCells(Player attacker, long[] cells)
+    {
+        if (mBoard.getThreatLineCount(attacker, 2) < 2)
+        {
+            Arrays.fill(cells, 0);
+            return false;
+        }
+
+        mBoard.getThreatCells(attacker, 2, cells);
+        if (!hasDoubleFourCell(attacker, cells))
+            return false;
+
+        addFourCells(attacker.getOpponent(), cells);
+        return true;
+    }
+
+    /**
+     * Check if the attacker, to move, wins by a sequence of threats.
+     *
+     * @param depth the most attacker moves left
+     * @param level number of moves made since the search started
+     * @return true if the win is forced
+     */
+    private boolean isAttackerWin(int depth, int level)
+    {
+        if (isOutOfBudget())
+            return false;
+
+        Player attacker = mBoard.getPlayerToMove();
+        Player defender = attacker.getOpponent();
+        if (mBoard.getThreatLineCount(attacker, 1) != 0)
+            return true;
+
+        long[] moves = mCellBuffers[level];
+        if (mBoard.getThreatLineCount(defender, 1) != 0)
+        {
+            // Block the defender's four, which only keeps the initiative if it is also a threat
+            mBoard.getThreatCells(defender, 1, moves);
+            if (Bits.count(moves) > 1)
+                return false;
+        }
+        else
+        {
+            mBoard.getThreatCells(attacker, 2, moves);
+            if (depth >= 2 && mBoard.getThreatLineCount(attacker, 3) != 0)
+            {
+                mBoard.getThreatCells(attacker, 3, mScratchCells);
+                for (int i = 0; i < moves.length; i++)
+                    moves[i] |= mScratchCells[i];
+            }
+        }
+
+        for (int word = 0; word < moves.length; word++)
+        {
+            for (long bits = moves[word]; bits != 0; bits &= bits - 1)
+            {
+                int move = word * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits);
+                mBoard.make(move);
+                boolean win = isDefenderLoss(depth - 1, level + 1);
+                mBoard.unmake();
+
+                if (win)
+                {
+                    if (level == 0)
+                        mWinningMove = move;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if the defender, to move after a threat, loses whatever it replies.
+     *
+     * @param depth the most attacker moves left
+     * @param level number of moves made since the search started
+     * @return true if every reply loses
+     */
+    private boolean isDefenderLoss(int depth, int level)
+    {
+        if (isOutOfBudget())
+            return false;
+
+        Player defender = mBoard.getPlayerToMove();
+        Player attacker = defender.getOpponent();
+        if (mBoard.getThreatLineCount(defender, 1) != 0)
+            return false;
+
+        long[] replies = mCellBuffers[level];
+        if (mBoard.getThreatLineCount(attacker, 1) != 0)
+        {
+            // A four has to be blocked, an open four or two fours cannot be
+            mBoard.getThreatCells(attacker, 1, replies);
+            if (Bits.count(replies) > 1)
+                return true;
+            if (depth == 0)
+                return false;
+        }
+        else if (depth == 0 || !getDefensiveCells(attacker, replies))
+        {
+            // Not a threat, the defender is free to play anywhere
+            return false;
+        }
+
+        for (int word = 0; word < replies.length; word++)
+        {
+            for (long bits = replies[word]; bits != 0; bits &= bits - 1)
+            {
+                int reply = word * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits);
+                mBoard.make(reply);
+                boolean loss = isAttackerWin(depth, level + 1);
+                mBoard.unmake();
+
+                if (!loss)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count a position and check the budget. Running out only makes the search miss wins,
+     * every win it reports is still forced.
+     *
+     * @return true if the search must stop
+     */
+    private boolean isOutOfBudget()
+    {
+        mNodeCount++;
+        if (mNodeCount >= mNodeLimit
+                || ((mNodeCount & TIME_CHECK_MASK) == 0 && System.nanoTime() >= mDeadlineNanos))
+            mAborted = true;
+        return mAborted;
+    }
+
+    /**
+     * Check if one of the given cells makes two fours with different missing cells for a
+     * player, which the opponent cannot block with a single marker.
+     *
+     * @param player
+     * @param cells  the blank cells of the player's threes
+     * @return true if such a cell is found
+     */
+    private boolean hasDoubleFourCell(Player player, long[] cells)
+    {
+        BoardGeometry geometry = mBoard.getGeometry();
+        int threeCount = geometry.getLineLength() - 2;
+        Player opponent = player.getOpponent();
+
+        for (int word = 0; word < cells.length; word++)
+        {
+            for (long bits = cells[word]; bits != 0; bits &= bits - 1)
+            {
+                int cell = word * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits);
+                int missingCell = GameAI.NO_MOVE;
+                for (int line : geometry.getCellLines(cell))
+                {
+                    if (mBoard.countLineMarkers(player, line) != threeCount
+                            || mBoard.countLineMarkers(opponent, line) != 0)
+                        continue;
+
+                    // The four made on this line misses its other blank cell
+                    for (int lineCell : geometry.getLineCells(line))
+                    {
+                        if (lineCell == cell || !mBoard.isEmpty(lineCell))
+                            continue;
+                        if (GameAI.NO_MOVE == missingCell)
+                            missingCell = lineCell;
+                        else if (lineCell != missingCell)
+                            return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Add the cells where a player makes a four.
+     *
+     * @param player
+     * @param cells  bitset the cells are added to
+     */
+    private void addFourCells(Player player, long[] cells)
+    {
+        if (mBoard.getThreatCells(player, 2, mScratchCells) == 0)
+            return;
+
+        for (int i = 0; i < cells.length; i++)
+            cells[i] |= mScratchCells[i];
+    }
+}
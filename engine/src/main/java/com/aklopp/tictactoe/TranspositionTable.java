@@ -0,0 +1,189 @@
+package com.aklopp.tictactoe;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size cache of search results keyed by Zobrist hash, so positions reached through
+ * different move orders are only searched once.
+ * Entries are packed into a single long: score, remaining depth, bound type and best move.
+ * Each hash maps to a bucket of two slots. The first keeps the deepest result seen for the
+ * bucket, the second always takes the newest result, so deep results survive while recent
+ * shallow ones are still cached.
+ * The table may be shared by several search threads without locking. Each slot stores the
+ * hash XORed with the entry next to the entry itself, so a slot whose two longs were written by
+ * different threads (or torn on a 32-bit VM) no longer matches its hash and reads as a miss.
+ * The table keeps no statistics, so probing writes nothing shared; callers count their own
+ * hits and misses.
+ */
+public final class TranspositionTable
+{
+    /**
+     * The stored score is the exact score of the position.
+     */
+    public static final int BOUND_EXACT = 1;
+
+    /**
+     * The search failed high, the stored score is a lower bound.
+     */
+    public static final int BOUND_LOWER = 2;
+
+    /**
+     * The search failed low, the stored score is an upper bound.
+     */
+    public static final int BOUND_UPPER = 3;
+
+    /**
+     * Returned by probe when the position is not in the table. No stored entry is 0 because
+     * the bound type is never 0.
+     */
+    public static final long MISS = 0;
+
+    /**
+     * The largest remaining depth that can be stored.
+     */
+    public static final int MAX_DEPTH = 0xFF;
+
+    /**
+     * Hash XOR entry for each slot.
+     */
+    private final long[] mKeys;
+
+    /**
+     * Packed entries for each slot.
+     */
+    private final long[] mEntries;
+
+    /**
+     * Masks a hash down to a bucket index.
+     */
+    private final int mBucketMask;
+
+    /**
+     * Constructor
+     *
+     * @param sizeBits the table holds 2^sizeBits entries
+     */
+    public TranspositionTable(int sizeBits)
+    {
+        if (sizeBits < 1 || sizeBits > 30)
+            throw new IllegalArgumentException("Table size out of range: 2^" + sizeBits);
+
+        mKeys = new long[1 << sizeBits];
+        mEntries = new long[1 << sizeBits];
+        mBucketMask = (1 << (sizeBits - 1)) - 1;
+    }
+
+    /**
+     * Look up a position.
+     *
+     * @param hash Zobrist hash of the position
+     * @return the packed entry, MISS if not found
+     */
+    public long probe(long hash)
+    {
+        int slot = getBucket(hash);
+        for (int i = 0; i < 2; i++, slot++)
+        {
+            // Read each long once, another thread may be writing the slot
+            long entry = mEntries[slot];
+            if (entry != MISS && (mKeys[slot] ^ entry) == hash)
+                return entry;
+        }
+        return MISS;
+    }
+
+    /**
+     * Store the result of searching a position.
+     *
+     * @param hash     Zobrist hash of the position
+     * @param depth    number of moves searched below the position
+     * @param bound    BOUND_EXACT, BOUND_LOWER or BOUND_UPPER
+     * @param bestMove best move found, GameAI.NO_MOVE if none
+     * @param score    score for the player to move
+     */
+    public void store(long hash, int depth, int bound, int bestMove, int score)
+    {
+        long entry = pack(Math.min(depth, MAX_DEPTH), bound, bestMove, score);
+        int slot = getBucket(hash);
+
+        // Keep the deepest result in the first slot, everything else goes in the second
+        long firstEntry = mEntries[slot];
+        if (firstEntry != MISS && (mKeys[slot] ^ firstEntry) != hash && getDepth(firstEntry) > depth)
+            slot++;
+
+        mKeys[slot] = hash ^ entry;
+        mEntries[slot] = entry;
+    }
+
+    /**
+     * Remove every entry.
+     */
+    public void clear()
+    {
+        Arrays.fill(mKeys, 0);
+        Arrays.fill(mEntries, MISS);
+    }
+
+    /**
+     * Get the score of a packed entry.
+     *
+     * @param entry
+     * @return score
+     */
+    public static int getScore(long entry)
+    {
+        return (int) entry;
+    }
+
+    /**
+     * Get the number of moves searched below the position of a packed entry.
+     *
+     * @param entry
+     * @return depth
+     */
+    public static int getDepth(long entry)
+    {
+        return (int) (entry >>> 32) & MAX_DEPTH;
+    }
+
+    /**
+     * Get the bound type of a packed entry.
+     *
+     * @param entry
+     * @return BOUND_EXACT, BOUND_LOWER or BOUND_UPPER
+     */
+    public static int getBound(long entry)
+    {
+        return (int) (entry >>> 40) & 0x3;
+    }
+
+    /**
+     * Get the best move of a packed entry.
+     *
+     * @param entry
+     * @return the cell, GameAI.NO_MOVE if none
+     */
+    public static int getMove(long entry)
+    {
+        return (int) (entry >>> 42) - 1;
+    }
+
+    /**
+     * Pack the fields of an entry into a long.
+     */
+    private static long pack(int depth, int bound, int bestMove, int score)
+    {
+        return ((long) (bestMove + 1) << 42)
+                | ((long) bound << 40)
+                | ((long) depth << 32)
+                | (score & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Get the index of the first slot of the bucket for a hash.
+     */
+    private int getBucket(long hash)
+    {
+        return ((int) (hash ^ (hash >>> 32)) & mBucketMask) << 1;
+    }
+}
@@ -0,0 +1,81 @@
+package com.aklopp.tictactoe;
+
+/**
+ * Zobrist hashing keys. A position's hash is the XOR of one random key per marker on the board,
+ * so placing or removing a marker updates the hash with a single XOR.
+ * The player to move follows from the marker counts, so it needs no key of its own.
+ */
+public final class Zobrist
+{
+    /**
+     * Seed for the key generator. Fixed so hashes are the same on every run.
+     */
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    /**
+     * One key per player per cell.
+     */
+    private final long[][] mKeys;
+
+    /**
+     * Constructor
+     *
+     * @param cellCount number of cells on the board
+     */
+    public Zobrist(int cellCount)
+    {
+        mKeys = new long[Player.values().length][cellCount];
+
+        long state = SEED;
+        for (long[] playerKeys : mKeys)
+        {
+            for (int cell = 0; cell < cellCount; cell++)
+            {
+                // SplitMix64 step
+                state += 0x9E3779B97F4A7C15L;
+                long key = state;
+                key = (key ^ (key >>> 30)) * 0xBF58476D1CE4E5B9L;
+                key = (key ^ (key >>> 27)) * 0x94D049BB133111EBL;
+                playerKeys[cell] = key ^ (key >>> 31);
+            }
+        }
+    }
+
+    /**
+     * Get the key for a marker of the given player on the given cell.
+     *
+     * @param player
+     * @param cell
+     * @return key
+     */
+    public long getKey(Player player, int cell)
+    {
+        return mKeys[player.ordinal()][cell];
+    }
+
+    /**
+     * Compute the hash of a board from scratch.
+     *
+     * @param xWords cells holding an X marker
+     * @param oWords cells holding an O marker
+     * @return hash
+     */
+    public long hash(long[] xWords, long[] oWords)
+    {
+        return hash(Player.X, xWords) ^ hash(Player.O, oWords);
+    }
+
+    /**
+     * XOR together the keys of one player's markers.
+     */
+    private long hash(Player player, long[] words)
+    {
+        long hash = 0;
+        for (int i = 0; i < words.length; i++)
+        {
+            for (long bits = words[i]; bits != 0; bits &= bits - 1)
+                hash ^= getKey(player, i * Bits.WORD_SIZE + Long.numberOfTrailingZeros(bits));
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,130 @@
+package com.aklopp.tictactoe;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GameAITest
+{
+    @Test
+    public void perfectPlayTableNeverLosesAsX()
+    {
+        assertNeverLoses(new GameAI(), Player.X);
+    }
+
+    @Test
+    public void perfectPlayTableNeverLosesAsO()
+    {
+        assertNeverLoses(new GameAI(), Player.O);
+    }
+
+    @Test
+    public void fullDepthSearchNeverLosesAsX()
+    {
+        assertNeverLoses(createSearchingAI(), Player.X);
+    }
+
+    @Test
+    public void fullDepthSearchNeverLosesAsO()
+    {
+        assertNeverLoses(createSearchingAI(), Player.O);
+    }
+
+    @Test
+    public void perfectPlayTableDrawsAgainstItself()
+    {
+        // Every move of the table keeps the value of the empty board, a draw
+        PerfectPlayTable table = PerfectPlayTable.getInstance();
+        Position position = new Position();
+        while (!position.isGameOver())
+        {
+            assertEquals(0, table.getValue(position));
+            position = position.play(table.getBestMove(position));
+        }
+        assertFalse(position.hasWon(Player.X));
+        assertFalse(position.hasWon(Player.O));
+    }
+
+    @Test
+    public void closeStopsTheHelperThreads() throws InterruptedException
+    {
+        GameAI ai = new GameAI(BoardGeometry.get(5, 4));
+        ai.setThreadCount(4);
+        ai.setMaxDepth(3);
+        Position position = new Position(BoardGeometry.get(5, 4));
+        ai.setPlayer(position.getPlayerToMove());
+        ai.makeMove(position);
+        assertEquals(3, countHelperThreads());
+
+        ai.close();
+        for (int i = 0; i < 100 && countHelperThreads() > 0; i++)
+            Thread.sleep(10);
+        assertEquals(0, countHelperThreads());
+
+        // Still plays, on the calling thread only
+        assertTrue(ai.makeMove(position) != GameAI.NO_MOVE);
+        assertEquals(0, countHelperThreads());
+    }
+
+    private static int countHelperThreads()
+    {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet())
+        {
+            if (thread.isAlive() && thread.getName().equals("GameAI helper"))
+                count++;
+        }
+        return count;
+    }
+
+    /**
+     * A search limited to the number of cells, which searches every move instead of looking
+     * the position up in the perfect play table.
+     *
+     * @return AI
+     */
+    private static GameAI createSearchingAI()
+    {
+        GameAI ai = new GameAI();
+        ai.setMaxDepth(BoardGeometry.STANDARD.getCellCount());
+        return ai;
+    }
+
+    /**
+     * Play the AI against every sequence of opponent moves.
+     *
+     * @param ai
+     * @param player the marker the AI plays
+     */
+    private static void assertNeverLoses(GameAI ai, Player player)
+    {
+        ai.setPlayer(player);
+        playEveryReply(ai, new Position());
+    }
+
+    private static void playEveryReply(GameAI ai, Position position)
+    {
+        if (position.isGameOver())
+        {
+            assertFalse("AI lost: " + position, position.hasWon(ai.getPlayer().getOpponent()));
+            return;
+        }
+
+        if (position.getPlayerToMove() == ai.getPlayer())
+        {
+            int move = ai.makeMove(position);
+            assertTrue("Illegal move " + move + ": " + position,
+                    move != GameAI.NO_MOVE && position.getPlayerAt(move) == null);
+            playEveryReply(ai, position.play(move));
+            return;
+        }
+
+        for (int cell = 0; cell < BoardGeometry.STANDARD.getCellCount(); cell++)
+        {
+            if (position.getPlayerAt(cell) == null)
+                playEveryReply(ai, position.play(cell));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.aklopp.tictactoe;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GameLogTest
+{
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void newLogIsEmpty() throws IOException
+    {
+        GameLog log = new GameLog(new File(mFolder.getRoot(), "games.log"));
+        try
+        {
+            assertEquals(0, log.getRecordCount());
+            assertFalse(log.iterator().hasNext());
+        }
+        finally
+        {
+            log.close();
+        }
+    }
+
+    @Test
+    public void appendedRecordsAreScannedAfterReopening() throws IOException
+    {
+        File file = new File(mFolder.getRoot(), "games.log");
+        List<GameRecord> records = new ArrayList<>();
+        Random random = new Random(2);
+
+        // Enough full 15 x 15 games to grow the mapping several times
+        GameLog log = new GameLog(file);
+        try
+        {
+            for (int i = 0; i < 1000; i++)
+            {
+                BoardGeometry geometry = (i % 3 == 0) ? BoardGeometry.STANDARD : BoardGeometry.get(15, 5);
+                GameRecord record = GameRecordTest.createRandomRecord(geometry, random);
+                log.append(record);
+                records.add(record);
+            }
+            log.flush();
+        }
+        finally
+        {
+            log.close();
+        }
+        assertTrue(file.length() > 64 * 1024);
+
+        // Reopen and append to the records already there
+        log = new GameLog(file);
+        try
+        {
+            assertEquals(records.size(), log.getRecordCount());
+            GameRecord record = GameRecordTest.createRandomRecord(BoardGeometry.STANDARD, random);
+            log.append(record);
+            records.add(record);
+        }
+        finally
+        {
+            log.close();
+        }
+
+        log = new GameLog(file);
+        try
+        {
+            assertEquals(records.size(), log.getRecordCount());
+            assertScans(records, log);
+        }
+        finally
+        {
+            log.close();
+        }
+    }
+
+    @Test
+    public void scanSkipsRecordsAppendedAfterIt() throws IOException
+    {
+        GameLog log = new GameLog(new File(mFolder.getRoot(), "games.log"));
+        try
+        {
+            GameRecord first = new GameRecord(BoardGeometry.STANDARD, Player.X, Outcome.WIN, new int[]{0, 3, 1, 4, 2});
+            log.append(first);
+            Iterator<GameRecord> records = log.iterator();
+            log.append(new GameRecord(BoardGeometry.STANDARD, Player.O, Outcome.LOSE, new int[]{0, 3, 1, 4, 2}));
+
+            assertEquals(first, records.next());
+            assertFalse(records.hasNext());
+        }
+        finally
+        {
+            log.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherFilesAreRejected() throws IOException
+    {
+        File file = mFolder.newFile("other.txt");
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(new byte[64]);
+        }
+        finally
+        {
+            out.close();
+        }
+        new GameLog(file).close();
+    }
+
+    private static void assertScans(List<GameRecord> expected, GameLog log)
+    {
+        Iterator<GameRecord> records = log.iterator();
+        for (GameRecord record : expected)
+            assertEquals(record, records.next());
+        assertFalse(records.hasNext());
+    }
+}
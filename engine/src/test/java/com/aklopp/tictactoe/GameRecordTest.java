@@ -0,0 +1,118 @@
+package com.aklopp.tictactoe;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GameRecordTest
+{
+    @Test
+    public void standardBoardRoundTripsInNibbleFormat()
+    {
+        GameRecord record = new GameRecord(BoardGeometry.STANDARD, Player.O, Outcome.TIE,
+                new int[]{4, 0, 8, 2, 1, 7, 6, 3, 5});
+
+        // A header byte and the moves two to a byte
+        assertEquals(6, record.getEncodedSize());
+        assertRoundTrips(record);
+    }
+
+    @Test
+    public void oddMoveCountRoundTripsInNibbleFormat()
+    {
+        assertRoundTrips(new GameRecord(BoardGeometry.STANDARD, Player.X, Outcome.WIN,
+                new int[]{0, 3, 1, 4, 2}));
+    }
+
+    @Test
+    public void emptyGameRoundTrips()
+    {
+        assertRoundTrips(new GameRecord(BoardGeometry.STANDARD, Player.X, Outcome.TIE, new int[0]));
+        assertRoundTrips(new GameRecord(BoardGeometry.get(15, 5), Player.O, Outcome.TIE, new int[0]));
+    }
+
+    @Test
+    public void largeBoardRoundTripsInVarintFormat()
+    {
+        BoardGeometry geometry = BoardGeometry.get(15, 5);
+        int[] moves = new int[geometry.getCellCount()];
+        for (int i = 0; i < moves.length; i++)
+            moves[i] = moves.length - 1 - i;
+        GameRecord record = new GameRecord(geometry, Player.O, Outcome.LOSE, moves);
+
+        // Header, dimension, line length, a 2 byte move count, then 1 or 2 bytes a move
+        assertEquals(1 + 1 + 1 + 2 + 128 + 2 * (225 - 128), record.getEncodedSize());
+        assertRoundTrips(record);
+    }
+
+    @Test
+    public void recordsReadBackToBack()
+    {
+        Random random = new Random(1);
+        GameRecord[] records = new GameRecord[50];
+        int size = 0;
+        for (int i = 0; i < records.length; i++)
+        {
+            BoardGeometry geometry = (i % 2 == 0) ? BoardGeometry.STANDARD : BoardGeometry.get(4 + i % 5, 3);
+            records[i] = createRandomRecord(geometry, random);
+            size += records[i].getEncodedSize();
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (GameRecord record : records)
+            record.writeTo(buffer);
+        assertEquals(size, buffer.position());
+
+        buffer.flip();
+        for (GameRecord record : records)
+            assertEquals(record, GameRecord.readFrom(buffer));
+        assertEquals(0, buffer.remaining());
+    }
+
+    /**
+     * A record of a game of random moves, stopped after a random number of moves.
+     *
+     * @param geometry
+     * @param random
+     * @return record
+     */
+    static GameRecord createRandomRecord(BoardGeometry geometry, Random random)
+    {
+        int[] cells = new int[geometry.getCellCount()];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = i;
+        for (int i = cells.length - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            int cell = cells[i];
+            cells[i] = cells[j];
+            cells[j] = cell;
+        }
+
+        int[] moves = new int[random.nextInt(cells.length + 1)];
+        System.arraycopy(cells, 0, moves, 0, moves.length);
+        Player marker = random.nextBoolean() ? Player.X : Player.O;
+        Outcome outcome = Outcome.values()[random.nextInt(Outcome.values().length)];
+        return new GameRecord(geometry, marker, outcome, moves);
+    }
+
+    private static void assertRoundTrips(GameRecord record)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(record.getEncodedSize());
+        record.writeTo(buffer);
+        assertEquals(0, buffer.remaining());
+
+        buffer.flip();
+        GameRecord copy = GameRecord.readFrom(buffer);
+        assertEquals(0, buffer.remaining());
+        assertEquals(record, copy);
+        assertEquals(record.getGeometry(), copy.getGeometry());
+        assertEquals(record.getMarker(), copy.getMarker());
+        assertEquals(record.getOutcome(), copy.getOutcome());
+        assertArrayEquals(record.getMoves(), copy.getMoves());
+    }
+}
@@ -0,0 +1,148 @@
+package com.aklopp.tictactoe;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SearchBoardTest
+{
+    private static final BoardGeometry[] GEOMETRIES = {
+            BoardGeometry.STANDARD, BoardGeometry.get(4, 3), BoardGeometry.get(7, 4), BoardGeometry.get(15, 5)};
+
+    @Test
+    public void unmakeRestoresTheBoard()
+    {
+        Random random = new Random(3);
+        for (BoardGeometry geometry : GEOMETRIES)
+        {
+            for (int game = 0; game < 20; game++)
+            {
+                SearchBoard board = new SearchBoard(geometry, createLineValues(geometry, random));
+                board.setPosition(createRandomPosition(geometry, random, geometry.getCellCount() / 4));
+                long[] before = snapshot(board);
+                long hash = board.getHash();
+                int symmetries = board.getPreservedSymmetries();
+
+                int moveCount = 0;
+                for (int cell : shuffleCells(geometry, random))
+                {
+                    if (!board.isEmpty(cell))
+                        continue;
+                    board.make(cell);
+                    moveCount++;
+                    if (board.isLastMoveWin())
+                        break;
+                }
+                for (int i = 0; i < moveCount; i++)
+                    board.unmake();
+
+                assertArrayEquals(geometry.toString(), before, snapshot(board));
+                assertEquals(hash, board.getHash());
+                assertEquals(symmetries, board.getPreservedSymmetries());
+            }
+        }
+    }
+
+    @Test
+    public void incrementalStateMatchesAFreshBoard()
+    {
+        Random random = new Random(4);
+        for (BoardGeometry geometry : GEOMETRIES)
+        {
+            int[] lineValues = createLineValues(geometry, random);
+            for (int game = 0; game < 20; game++)
+            {
+                SearchBoard board = new SearchBoard(geometry, lineValues);
+                board.setPosition(new Position(geometry));
+                for (int cell : shuffleCells(geometry, random))
+                {
+                    board.make(cell);
+
+                    SearchBoard fresh = new SearchBoard(geometry, lineValues);
+                    fresh.setPosition(board.toPosition());
+                    assertArrayEquals(geometry.toString(), snapshot(fresh), snapshot(board));
+                    assertEquals(fresh.getHash(), board.getHash());
+                    assertEquals(fresh.getPreservedSymmetries(), board.getPreservedSymmetries());
+                    if (board.isLastMoveWin())
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Everything the board updates incrementally, apart from the hash: the player to move, the
+     * marker and empty counts, the score, the line counts and the threat line counts.
+     *
+     * @param board
+     * @return values in a fixed order
+     */
+    private static long[] snapshot(SearchBoard board)
+    {
+        BoardGeometry geometry = board.getGeometry();
+        Player[] players = Player.values();
+        long[] values = new long[4 + players.length * (geometry.getLineCount() + SearchBoard.MAX_THREAT_MISSING)];
+        int i = 0;
+        values[i++] = board.getPlayerToMove().ordinal();
+        values[i++] = board.getMarkerCount();
+        values[i++] = board.getEmptyCount();
+        values[i++] = board.getScore();
+        for (Player player : players)
+        {
+            for (int line = 0; line < geometry.getLineCount(); line++)
+                values[i++] = board.countLineMarkers(player, line);
+            for (int missing = 1; missing <= SearchBoard.MAX_THREAT_MISSING; missing++)
+                values[i++] = board.getThreatLineCount(player, missing);
+        }
+        return values;
+    }
+
+    private static int[] createLineValues(BoardGeometry geometry, Random random)
+    {
+        int[] lineValues = new int[(geometry.getLineLength() + 1) * (geometry.getLineLength() + 1)];
+        for (int i = 0; i < lineValues.length; i++)
+            lineValues[i] = random.nextInt(2001) - 1000;
+        return lineValues;
+    }
+
+    /**
+     * A position of alternating markers on random cells, without a completed line.
+     *
+     * @param geometry
+     * @param random
+     * @param markerCount the most markers to place
+     * @return position
+     */
+    private static Position createRandomPosition(BoardGeometry geometry, Random random, int markerCount)
+    {
+        Position position = new Position(geometry);
+        for (int cell : shuffleCells(geometry, random))
+        {
+            if (position.getMarkerCount(Player.X) + position.getMarkerCount(Player.O) == markerCount)
+                break;
+            Position next = position.play(cell);
+            if (next.isGameOver())
+                break;
+            position = next;
+        }
+        return position;
+    }
+
+    private static int[] shuffleCells(BoardGeometry geometry, Random random)
+    {
+        int[] cells = new int[geometry.getCellCount()];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = i;
+        for (int i = cells.length - 1; i > 0; i--)
+        {
+            int j = random.nextInt(i + 1);
+            int cell = cells[i];
+            cells[i] = cells[j];
+            cells[j] = cell;
+        }
+        return cells;
+    }
+}
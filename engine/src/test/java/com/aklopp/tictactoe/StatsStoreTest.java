@@ -0,0 +1,145 @@
+package com.aklopp.tictactoe;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StatsStoreTest
+{
+    private static final BoardGeometry LARGE_BOARD = BoardGeometry.get(15, 5);
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void countsReloadFromJournal() throws Exception
+    {
+        File directory = mFolder.getRoot();
+        StatsStore store = new StatsStore(directory);
+        store.record(BoardGeometry.STANDARD, Player.X, Outcome.WIN);
+        store.record(BoardGeometry.STANDARD, Player.O, Outcome.TIE);
+        store.add(LARGE_BOARD, null, Outcome.LOSE, 300);
+        store.close();
+
+        store = new StatsStore(directory);
+        assertEquals(1, store.getCount(BoardGeometry.STANDARD, Player.X, Outcome.WIN));
+        assertEquals(1, store.getCount(BoardGeometry.STANDARD, Player.O, Outcome.TIE));
+        assertEquals(300, store.getCount(LARGE_BOARD, null, Outcome.LOSE));
+        assertEquals(0, store.getCount(LARGE_BOARD, Player.X, Outcome.LOSE));
+        assertEquals(302, store.getGameCount());
+        store.close();
+    }
+
+    @Test
+    public void countsReloadAfterCompaction() throws Exception
+    {
+        File directory = mFolder.getRoot();
+
+        // A journal written before the compaction
+        StatsStore store = new StatsStore(directory);
+        for (int i = 0; i < 10; i++)
+            store.record(BoardGeometry.STANDARD, Player.X, Outcome.WIN);
+        store.close();
+
+        // Enough entries to replace the journal with a snapshot
+        store = new StatsStore(directory);
+        for (int i = 0; i < 5000; i++)
+            store.record((i % 2 == 0) ? BoardGeometry.STANDARD : LARGE_BOARD, Player.O, Outcome.LOSE);
+        store.close();
+        File journal = new File(directory, "stats.journal");
+        long compactedJournalLength = journal.length();
+        assertTrue(compactedJournalLength < 5000);
+
+        // And a journal on top of the new snapshot
+        store = new StatsStore(directory);
+        for (int i = 0; i < 20; i++)
+            store.record(LARGE_BOARD, Player.X, Outcome.TIE);
+        store.close();
+        assertTrue(journal.length() > compactedJournalLength);
+
+        store = new StatsStore(directory);
+        assertEquals(10, store.getCount(BoardGeometry.STANDARD, Player.X, Outcome.WIN));
+        assertEquals(2500, store.getCount(BoardGeometry.STANDARD, Player.O, Outcome.LOSE));
+        assertEquals(2500, store.getCount(LARGE_BOARD, Player.O, Outcome.LOSE));
+        assertEquals(20, store.getCount(LARGE_BOARD, Player.X, Outcome.TIE));
+        assertEquals(5000, store.getCount(Outcome.LOSE));
+        assertEquals(5030, store.getGameCount());
+        store.close();
+    }
+
+    @Test
+    public void syncWritesBeforeReturning() throws Exception
+    {
+        File directory = mFolder.getRoot();
+        File journal = new File(directory, "stats.journal");
+        StatsStore store = new StatsStore(directory);
+        store.sync();
+        long emptyJournalLength = journal.length();
+
+        store.record(BoardGeometry.STANDARD, Player.X, Outcome.WIN);
+        store.sync();
+        assertTrue(journal.length() > emptyJournalLength);
+        store.close();
+    }
+
+    @Test
+    public void clearedCountsStayCleared() throws Exception
+    {
+        File directory = mFolder.getRoot();
+        StatsStore store = new StatsStore(directory);
+        store.add(BoardGeometry.STANDARD, Player.X, Outcome.WIN, 7);
+        store.close();
+
+        store = new StatsStore(directory);
+        store.clear();
+        store.record(BoardGeometry.STANDARD, Player.O, Outcome.WIN);
+        store.close();
+
+        store = new StatsStore(directory);
+        assertEquals(0, store.getCount(BoardGeometry.STANDARD, Player.X, Outcome.WIN));
+        assertEquals(1, store.getGameCount());
+        store.close();
+    }
+
+    @Test
+    public void entryCutShortIsDropped() throws Exception
+    {
+        File directory = mFolder.getRoot();
+        StatsStore store = new StatsStore(directory);
+        store.record(BoardGeometry.STANDARD, Player.X, Outcome.WIN);
+        store.close();
+
+        // The first bytes of an entry, as left by a crash during a write
+        appendBytes(new File(directory, "stats.journal"), new byte[]{3, 3});
+
+        store = new StatsStore(directory);
+        assertEquals(1, store.getGameCount());
+        store.record(BoardGeometry.STANDARD, Player.X, Outcome.WIN);
+        store.close();
+
+        store = new StatsStore(directory);
+        assertEquals(2, store.getCount(BoardGeometry.STANDARD, Player.X, Outcome.WIN));
+        assertEquals(2, store.getGameCount());
+        store.close();
+    }
+
+    private static void appendBytes(File file, byte[] bytes) throws IOException
+    {
+        FileOutputStream output = new FileOutputStream(file, true);
+        try
+        {
+            output.write(bytes);
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.aklopp.tictactoe;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ThreatSearchTest
+{
+    private static final BoardGeometry GEOMETRY = BoardGeometry.get(15, 5);
+
+    private static final int MAX_DEPTH = 8;
+
+    @Test
+    public void openThreeWinsByMakingAnOpenFour()
+    {
+        // X has an open three in the middle row, O only corner markers far from it
+        SearchBoard board = createBoard(new int[]{cell(7, 5), cell(0, 0), cell(7, 6), cell(0, 14), cell(7, 7), cell(14, 0)});
+        ThreatSearch search = new ThreatSearch(board, MAX_DEPTH);
+        long hash = board.getHash();
+
+        int move = search.findForcedWin(MAX_DEPTH, Long.MAX_VALUE, Long.MAX_VALUE);
+        assertTrue("Unexpected winning move " + move, move == cell(7, 4) || move == cell(7, 8));
+        assertEquals(hash, board.getHash());
+        assertEquals(6, board.getMarkerCount());
+    }
+
+    @Test
+    public void doubleThreeWinsThroughTheCrossing()
+    {
+        // X has two open twos crossing at (7, 7), making two open threes there
+        SearchBoard board = createBoard(new int[]{
+                cell(7, 5), cell(0, 0), cell(7, 6), cell(0, 14), cell(5, 7), cell(14, 0), cell(6, 7), cell(14, 14)});
+        ThreatSearch search = new ThreatSearch(board, MAX_DEPTH);
+
+        assertTrue(search.findForcedWin(MAX_DEPTH, Long.MAX_VALUE, Long.MAX_VALUE) != GameAI.NO_MOVE);
+    }
+
+    @Test
+    public void noWinWithoutThreats()
+    {
+        SearchBoard board = createBoard(new int[]{cell(7, 7), cell(7, 8), cell(6, 6)});
+        ThreatSearch search = new ThreatSearch(board, MAX_DEPTH);
+
+        assertEquals(GameAI.NO_MOVE, search.findForcedWin(MAX_DEPTH, Long.MAX_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void blockedThreeIsNoThreat()
+    {
+        // O has blocked one end of the three, so X gets a single four the block answers
+        SearchBoard board = createBoard(new int[]{cell(7, 5), cell(7, 4), cell(7, 6), cell(0, 14), cell(7, 7)});
+        ThreatSearch search = new ThreatSearch(board, MAX_DEPTH);
+
+        long[] cells = new long[GEOMETRY.getWordCount()];
+        assertFalse(search.getDefensiveCells(Player.X, cells));
+    }
+
+    @Test
+    public void openThreeIsAnsweredOnItsEnds()
+    {
+        SearchBoard board = createBoard(new int[]{cell(7, 5), cell(0, 0), cell(7, 6), cell(0, 14), cell(7, 7)});
+        ThreatSearch search = new ThreatSearch(board, MAX_DEPTH);
+
+        long[] cells = new long[GEOMETRY.getWordCount()];
+        assertTrue(search.getDefensiveCells(Player.X, cells));
+
+        long[] expected = new long[GEOMETRY.getWordCount()];
+        for (int col : new int[]{3, 4, 8, 9})
+            Bits.set(expected, cell(7, col));
+        assertArrayEquals(expected, cells);
+    }
+
+    @Test
+    public void searchStopsAtTheNodeLimit()
+    {
+        SearchBoard board = createBoard(new int[]{cell(7, 5), cell(0, 0), cell(7, 6), cell(0, 14), cell(7, 7), cell(14, 0)});
+        ThreatSearch search = new ThreatSearch(board, MAX_DEPTH);
+
+        assertEquals(GameAI.NO_MOVE, search.findForcedWin(MAX_DEPTH, 1, Long.MAX_VALUE));
+        assertEquals(1, search.getNodeCount());
+    }
+
+    private static int cell(int row, int col)
+    {
+        return GEOMETRY.toCell(row, col);
+    }
+
+    private static SearchBoard createBoard(int[] moves)
+    {
+        Position position = new Position(GEOMETRY);
+        for (int move : moves)
+            position = position.play(move);
+
+        int lineLength = GEOMETRY.getLineLength();
+        SearchBoard board = new SearchBoard(GEOMETRY, new int[(lineLength + 1) * (lineLength + 1)]);
+        board.setPosition(position);
+        return board;
+    }
+}
@@ -0,0 +1,73 @@
+package com.aklopp.tictactoe;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads a game log from start to end and reports the records per second and the outcome
+ * distribution of each board, as a check that a log can be scanned at disk speed.
+ * <p>
+ * Arguments: the log file, then optionally replay=true to also replay every game and check that
+ * its final position agrees with the recorded outcome.
+ */
+public class GameLogScan
+{
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0)
+            throw new IllegalArgumentException("Expected a game log file");
+        File file = new File(args[0]);
+        boolean replay = args.length > 1 && args[1].equals("replay=true");
+
+        GameLog gameLog = new GameLog(file);
+        Map<BoardGeometry, long[]> outcomesByBoard = new LinkedHashMap<>();
+        long recordCount = 0;
+        long mismatchCount = 0;
+        long start = System.nanoTime();
+
+        for (GameRecord record : gameLog)
+        {
+            recordCount++;
+            long[] outcomes = outcomesByBoard.get(record.getGeometry());
+            if (null == outcomes)
+            {
+                outcomes = new long[Outcome.values().length];
+                outcomesByBoard.put(record.getGeometry(), outcomes);
+            }
+            outcomes[record.getOutcome().ordinal()]++;
+
+            if (replay && getOutcome(record) != record.getOutcome())
+                mismatchCount++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        gameLog.close();
+
+        System.out.println(String.format("%s: %d records, %d bytes on disk, %.2f s, %.0f records/sec",
+                file, recordCount, file.length(), seconds, recordCount / seconds));
+        for (Map.Entry<BoardGeometry, long[]> entry : outcomesByBoard.entrySet())
+        {
+            StringBuilder text = new StringBuilder(entry.getKey().toString()).append(':');
+            for (Outcome outcome : Outcome.values())
+                text.append(' ').append(outcome).append(' ').append(entry.getValue()[outcome.ordinal()]);
+            System.out.println(text);
+        }
+        if (replay)
+            System.out.println(mismatchCount + " records disagree with their replay");
+    }
+
+    /**
+     * Replay a game and get the outcome of its final position for the recorded marker.
+     */
+    private static Outcome getOutcome(GameRecord record)
+    {
+        Position position = record.getPosition(record.getMoveCount());
+        Player opponent = (record.getMarker() == Player.X) ? Player.O : Player.X;
+        if (position.hasWon(record.getMarker()))
+            return Outcome.WIN;
+        if (position.hasWon(opponent))
+            return Outcome.LOSE;
+        return Outcome.TIE;
+    }
+}
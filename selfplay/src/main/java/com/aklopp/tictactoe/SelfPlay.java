@@ -0,0 +1,270 @@
+package com.aklopp.tictactoe;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays games between two move strategies without the Android UI, on every core, and reports
+ * the games per second and the outcome distribution of the first strategy.
+ * The first strategy plays X in even games and O in odd games.
+ * <p>
+ * Arguments are key=value pairs, all optional:
+ * <ul>
+ * <li>games - number of games, default 100000</li>
+ * <li>board, k - board dimension and markers in a row, default 3 and 3</li>
+ * <li>a, b - the strategies: ai, mcts, random or first, default ai and random</li>
+ * <li>depth, millis - search depth and per-move time limit of the ai strategy</li>
+ * <li>playouts - playouts per move of the mcts strategy, millis limits its time too</li>
+ * <li>threads - number of games played at once, default every core</li>
+ * <li>seed - seed of the random strategies, default 1</li>
+ * <li>maxLossRate - exit with status 1 if strategy a loses more than this fraction of games</li>
+ * <li>metrics - true to print the search metrics of the ai and mcts strategies</li>
+ * <li>log - file to append every game to as a GameRecord for strategy a, see GameLogScan</li>
+ * </ul>
+ */
+public class SelfPlay
+{
+    /**
+     * Outcomes are counted for strategy a playing each side, indexed by Player ordinal.
+     */
+    private static final int SIDE_COUNT = Player.values().length;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException, IOException
+    {
+        final Map<String, String> options = parseOptions(args);
+        final long gameCount = Long.parseLong(get(options, "games", "100000"));
+        final BoardGeometry geometry = BoardGeometry.get(
+                Integer.parseInt(get(options, "board", "3")), Integer.parseInt(get(options, "k", "3")));
+        final String strategyA = get(options, "a", "ai");
+        final String strategyB = get(options, "b", "random");
+        final int threadCount = Integer.parseInt(
+                get(options, "threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        final long seed = Long.parseLong(get(options, "seed", "1"));
+        final GameLog gameLog = options.containsKey("log") ? new GameLog(new File(options.get("log"))) : null;
+
+        // Search metrics of every worker's strategy a and b
+        final SearchMetrics metricsA = new SearchMetrics();
+        final SearchMetrics metricsB = new SearchMetrics();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<Future<long[][]>> results = new ArrayList<>();
+        long start = System.nanoTime();
+
+        for (int worker = 0; worker < threadCount; worker++)
+        {
+            final int firstGame = worker;
+            results.add(executor.submit(new Callable<long[][]>()
+            {
+                @Override
+                public long[][] call() throws IOException
+                {
+                    // Each worker has its own strategies, they are not thread safe
+                    MoveStrategy a = createStrategy(strategyA, geometry, options, seed * 31 + firstGame * 2);
+                    MoveStrategy b = createStrategy(strategyB, geometry, options, seed * 31 + firstGame * 2 + 1);
+                    long[][] outcomes = new long[SIDE_COUNT][Outcome.values().length];
+
+                    for (long game = firstGame; game < gameCount; game += threadCount)
+                    {
+                        Player sideOfA = (game % 2 == 0) ? Player.X : Player.O;
+                        GameRecord record = (sideOfA == Player.X)
+                                ? playGame(geometry, a, b)
+                                : reverse(playGame(geometry, b, a));
+                        outcomes[sideOfA.ordinal()][record.getOutcome().ordinal()]++;
+                        if (null != gameLog)
+                            gameLog.append(record);
+                    }
+                    addMetrics(metricsA, a);
+                    addMetrics(metricsB, b);
+                    return outcomes;
+                }
+            }));
+        }
+
+        long[][] outcomes = new long[SIDE_COUNT][Outcome.values().length];
+        for (Future<long[][]> result : results)
+        {
+            long[][] workerOutcomes = result.get();
+            for (int side = 0; side < SIDE_COUNT; side++)
+            {
+                for (int outcome = 0; outcome < workerOutcomes[side].length; outcome++)
+                    outcomes[side][outcome] += workerOutcomes[side][outcome];
+            }
+        }
+        executor.shutdown();
+        if (null != gameLog)
+            gameLog.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format("%s: %s vs %s, %d games on %d threads in %.2f s, %.0f games/sec",
+                geometry, strategyA, strategyB, gameCount, threadCount, seconds, gameCount / seconds));
+        long[] total = new long[Outcome.values().length];
+        for (int side = 0; side < SIDE_COUNT; side++)
+        {
+            for (int outcome = 0; outcome < total.length; outcome++)
+                total[outcome] += outcomes[side][outcome];
+        }
+        System.out.println(strategyA + " overall: " + formatOutcomes(total));
+        for (Player side : Player.values())
+            System.out.println(strategyA + " as " + side + ":    " + formatOutcomes(outcomes[side.ordinal()]));
+
+        if (Boolean.parseBoolean(options.get("metrics")))
+        {
+            if (metricsA.getMoveCount() > 0)
+                System.out.println(strategyA + " (a) search: " + metricsA);
+            if (metricsB.getMoveCount() > 0)
+                System.out.println(strategyB + " (b) search: " + metricsB);
+        }
+
+        if (options.containsKey("maxLossRate"))
+        {
+            double lossRate = (double) total[Outcome.LOSE.ordinal()] / gameCount;
+            if (lossRate > Double.parseDouble(options.get("maxLossRate")))
+            {
+                System.out.println(strategyA + " lost " + lossRate + " of its games");
+                System.exit(1);
+            }
+        }
+    }
+
+    /**
+     * Play a game to the end.
+     *
+     * @param geometry
+     * @param x        plays X, moves first
+     * @param o        plays O
+     * @return the game, recorded for X
+     */
+    static GameRecord playGame(BoardGeometry geometry, MoveStrategy x, MoveStrategy o)
+    {
+        int[] moves = new int[geometry.getCellCount()];
+        int moveCount = 0;
+        Position position = new Position(geometry);
+        while (!position.isGameOver())
+        {
+            MoveStrategy strategy = (position.getPlayerToMove() == Player.X) ? x : o;
+            moves[moveCount] = strategy.selectMove(position);
+            position = position.play(moves[moveCount++]);
+        }
+
+        Outcome outcome = Outcome.TIE;
+        if (position.hasWon(Player.X))
+            outcome = Outcome.WIN;
+        else if (position.hasWon(Player.O))
+            outcome = Outcome.LOSE;
+        return new GameRecord(geometry, Player.X, outcome, Arrays.copyOf(moves, moveCount));
+    }
+
+    /**
+     * Get the record of a game for O.
+     */
+    private static GameRecord reverse(GameRecord record)
+    {
+        Outcome outcome = Outcome.TIE;
+        if (record.getOutcome() == Outcome.WIN)
+            outcome = Outcome.LOSE;
+        else if (record.getOutcome() == Outcome.LOSE)
+            outcome = Outcome.WIN;
+        return new GameRecord(record.getGeometry(), Player.O, outcome, record.getMoves());
+    }
+
+    /**
+     * Add the search metrics of a strategy, if it searches.
+     */
+    private static void addMetrics(SearchMetrics metrics, MoveStrategy strategy)
+    {
+        if (strategy instanceof GameAI)
+            metrics.add(((GameAI) strategy).getMetrics());
+        else if (strategy instanceof MctsAI)
+            metrics.add(((MctsAI) strategy).getMetrics());
+    }
+
+    /**
+     * Create a strategy by name.
+     *
+     * @param name     ai, mcts, random or first
+     * @param geometry
+     * @param options  depth, millis and playouts configure the ai and mcts strategies
+     * @param seed     seed of the random and mcts strategies
+     * @return strategy
+     */
+    private static MoveStrategy createStrategy(String name, BoardGeometry geometry, Map<String, String> options, long seed)
+    {
+        switch (name)
+        {
+            case "ai":
+                GameAI gameAI = new GameAI(geometry);
+
+                // Games are already played on every core
+                gameAI.setThreadCount(1);
+                if (options.containsKey("depth"))
+                    gameAI.setMaxDepth(Integer.parseInt(options.get("depth")));
+                if (options.containsKey("millis"))
+                    gameAI.setBudget(SearchBudget.ofMillis(Long.parseLong(options.get("millis"))));
+                return gameAI;
+            case "mcts":
+                MctsAI mctsAI = new MctsAI(geometry);
+                mctsAI.setThreadCount(1);
+                mctsAI.setSeed(seed);
+                mctsAI.setBudget(new SearchBudget(Long.parseLong(get(options, "millis", "0")),
+                        Long.parseLong(get(options, "playouts", Long.toString(MctsAI.DEFAULT_PLAYOUT_LIMIT)))));
+                return mctsAI;
+            case "random":
+                return new RandomStrategy(seed);
+            case "first":
+                return new FirstEmptyStrategy();
+        }
+        throw new IllegalArgumentException("Unknown strategy: " + name);
+    }
+
+    /**
+     * Format outcome counts as percentages.
+     */
+    private static String formatOutcomes(long[] counts)
+    {
+        long games = 0;
+        for (long count : counts)
+            games += count;
+
+        StringBuilder text = new StringBuilder();
+        for (Outcome outcome : Outcome.values())
+        {
+            double percent = (games == 0) ? 0 : 100.0 * counts[outcome.ordinal()] / games;
+            text.append(String.format("%s %6.2f%% (%d)  ", outcome, percent, counts[outcome.ordinal()]));
+        }
+        return text.toString().trim();
+    }
+
+    /**
+     * Parse key=value arguments.
+     */
+    private static Map<String, String> parseOptions(String[] args)
+    {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args)
+        {
+            int separator = arg.indexOf('=');
+            if (separator <= 0)
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Get an option, or its default value.
+     */
+    private static String get(Map<String, String> options, String key, String defaultValue)
+    {
+        return options.containsKey(key) ? options.get(key) : defaultValue;
+    }
+}
@@ -0,0 +1,446 @@
+package com.aklopp.tictactoe;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP server hosting games against the AI for many players at once.
+ * Sessions live in a SessionTable, every request runs on its own virtual thread, and AI moves
+ * are computed by a pool of engines, one per core, shared by all sessions.
+ * <p>
+ * Requests, answered with a line of key=value pairs in text/plain:
+ * <ul>
+ * <li>POST /games?marker=X - start a game, the AI moves first when the user plays O</li>
+ * <li>GET /games/{id} - get the state of a game</li>
+ * <li>POST /games/{id}?cell=4 - place the user's marker, the AI replies in the same response</li>
+ * <li>DELETE /games/{id} - abandon a game</li>
+ * <li>GET /stats - sessions in progress, moves played and the server's cores</li>
+ * </ul>
+ * Finished games are removed as soon as their last move has been answered, abandoned ones once
+ * the table is full and they have been idle for the idle timeout.
+ * <p>
+ * Arguments are key=value pairs, all optional:
+ * <ul>
+ * <li>port - default 8080</li>
+ * <li>board, k - board dimension and markers in a row, default 3 and 3</li>
+ * <li>sessions - maximum number of games at once, default 65536</li>
+ * <li>idle - seconds a game may go without a request before its slot may be reused, default
+ * 600</li>
+ * <li>depth, millis - search depth and per-move time limit of the AI</li>
+ * <li>engines - number of AI moves computed at once, default every core</li>
+ * </ul>
+ */
+public class GameServer
+{
+    /**
+     * Status of a game that is not over yet.
+     */
+    static final String IN_PROGRESS = "IN_PROGRESS";
+
+    /**
+     * Pending connections the listening socket queues.
+     */
+    private static final int BACKLOG = 4096;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The games in progress.
+     */
+    private final SessionTable mSessions;
+
+    /**
+     * Engines not computing a move, a request takes one for the length of a search.
+     */
+    private final BlockingQueue<GameAI> mEngines;
+
+    /**
+     * Moves placed by users and by the AI since the server started.
+     */
+    private final AtomicLong mMoveCount = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param geometry    board of every game
+     * @param capacity    maximum number of games at once
+     * @param idleSeconds seconds a game may go without a request before its slot may be reused
+     * @param engineCount number of AI moves computed at once
+     * @param maxDepth    search depth, GameAI.UNLIMITED_DEPTH for the default
+     * @param budget      search budget of each AI move
+     */
+    public GameServer(BoardGeometry geometry, int capacity, long idleSeconds, int engineCount, int maxDepth,
+                      SearchBudget budget)
+    {
+        mSessions = new SessionTable(geometry, capacity, idleSeconds);
+        mEngines = new ArrayBlockingQueue<>(engineCount);
+        for (int i = 0; i < engineCount; i++)
+        {
+            GameAI gameAI = new GameAI(geometry);
+
+            // Requests already run on every core
+            gameAI.setThreadCount(1);
+            if (maxDepth != GameAI.UNLIMITED_DEPTH)
+                gameAI.setMaxDepth(maxDepth);
+            gameAI.setBudget(budget);
+            mEngines.add(gameAI);
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, String> options = parseOptions(args);
+        int port = Integer.parseInt(get(options, "port", "8080"));
+        BoardGeometry geometry = BoardGeometry.get(
+                Integer.parseInt(get(options, "board", "3")), Integer.parseInt(get(options, "k", "3")));
+        int capacity = Integer.parseInt(get(options, "sessions", "65536"));
+        long idleSeconds = Long.parseLong(get(options, "idle", "600"));
+        int engineCount = Integer.parseInt(
+                get(options, "engines", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        int maxDepth = options.containsKey("depth")
+                ? Integer.parseInt(options.get("depth"))
+                : GameAI.UNLIMITED_DEPTH;
+        SearchBudget budget = options.containsKey("millis")
+                ? SearchBudget.ofMillis(Long.parseLong(options.get("millis")))
+                : SearchBudget.UNLIMITED;
+
+        GameServer gameServer = new GameServer(geometry, capacity, idleSeconds, engineCount, maxDepth, budget);
+        HttpServer server = gameServer.start(port);
+        System.out.println(String.format("%s: serving up to %d games on port %d, %d engines",
+                geometry, capacity, server.getAddress().getPort(), engineCount));
+    }
+
+    /**
+     * Start serving requests.
+     *
+     * @param port port to listen on, 0 for any free port
+     * @return the running server
+     */
+    public HttpServer start(int port) throws IOException
+    {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        server.createContext("/games", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                handleGames(exchange);
+            }
+        });
+        server.createContext("/stats", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                respond(exchange, 200, "sessions=" + mSessions.getSessionCount() + " moves=" + mMoveCount.get()
+                        + " cores=" + Runtime.getRuntime().availableProcessors());
+            }
+        });
+        server.setExecutor(newRequestExecutor());
+        server.start();
+        return server;
+    }
+
+    /**
+     * Create an executor that runs each task on a new virtual thread. Virtual threads are looked
+     * up by reflection so the module still builds for Java 7, before Java 21 a cached thread
+     * pool is used instead.
+     *
+     * @return executor
+     */
+    static ExecutorService newRequestExecutor()
+    {
+        try
+        {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (NoSuchMethodException e)
+        {
+            return Executors.newCachedThreadPool();
+        }
+        catch (IllegalAccessException | InvocationTargetException e)
+        {
+            throw new IllegalStateException("Could not create virtual thread executor", e);
+        }
+    }
+
+    /**
+     * Route a request under /games.
+     */
+    private void handleGames(HttpExchange exchange) throws IOException
+    {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        try
+        {
+            if (path.equals("/games") || path.equals("/games/"))
+            {
+                if (method.equals("POST"))
+                    createGame(exchange, query);
+                else
+                    respond(exchange, 405, "error=method");
+                return;
+            }
+
+            long id = Long.parseLong(path.substring("/games/".length()));
+            switch (method)
+            {
+                case "GET":
+                    getGame(exchange, id);
+                    break;
+                case "POST":
+                    playMove(exchange, id, query);
+                    break;
+                case "DELETE":
+                    if (mSessions.remove(id))
+                        respond(exchange, 200, "id=" + id);
+                    else
+                        respond(exchange, 404, "error=session");
+                    break;
+                default:
+                    respond(exchange, 405, "error=method");
+            }
+        }
+        catch (NumberFormatException e)
+        {
+            respond(exchange, 400, "error=request");
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            respond(exchange, 503, "error=interrupted");
+        }
+        catch (RuntimeException e)
+        {
+            // A failed search must not drop the connection
+            respond(exchange, 500, "error=internal");
+        }
+    }
+
+    /**
+     * Start a game, and make the AI's first move if it plays X.
+     */
+    private void createGame(HttpExchange exchange, Map<String, String> query) throws IOException, InterruptedException
+    {
+        Player userMarker = "O".equals(query.get("marker")) ? Player.O : Player.X;
+        long id = mSessions.create(userMarker);
+        if (id == SessionTable.NO_SESSION)
+        {
+            respond(exchange, 503, "error=full");
+            return;
+        }
+
+        Position position = new Position(mSessions.getGeometry());
+        int aiMove = GameAI.NO_MOVE;
+        if (userMarker == Player.O)
+        {
+            // The session is removed if the search fails, so a failed request does not hold its slot
+            boolean isPlayed = false;
+            try
+            {
+                aiMove = selectAIMove(position);
+                Position next = position.play(aiMove);
+                isPlayed = mSessions.replace(id, position, next);
+                position = next;
+            }
+            finally
+            {
+                if (!isPlayed)
+                    mSessions.remove(id);
+            }
+            if (!isPlayed)
+            {
+                respond(exchange, 409, "error=conflict");
+                return;
+            }
+            mMoveCount.incrementAndGet();
+        }
+        respond(exchange, 200, describe(id, position, userMarker, aiMove));
+    }
+
+    /**
+     * Report the state of a game.
+     */
+    private void getGame(HttpExchange exchange, long id) throws IOException
+    {
+        Player userMarker = mSessions.getUserMarker(id);
+        Position position = mSessions.getPosition(id);
+        if (null == userMarker || null == position)
+            respond(exchange, 404, "error=session");
+        else
+            respond(exchange, 200, describe(id, position, userMarker, GameAI.NO_MOVE));
+    }
+
+    /**
+     * Place the user's marker and answer with the AI's reply.
+     */
+    private void playMove(HttpExchange exchange, long id, Map<String, String> query) throws IOException, InterruptedException
+    {
+        Player userMarker = mSessions.getUserMarker(id);
+        Position position = mSessions.getPosition(id);
+        if (null == userMarker || null == position)
+        {
+            respond(exchange, 404, "error=session");
+            return;
+        }
+
+        int cell = Integer.parseInt(get(query, "cell", "-1"));
+        if (cell < 0 || cell >= position.getGeometry().getCellCount() || null != position.getPlayerAt(cell))
+        {
+            respond(exchange, 400, "error=cell");
+            return;
+        }
+        if (position.getPlayerToMove() != userMarker)
+        {
+            respond(exchange, 409, "error=turn");
+            return;
+        }
+
+        Position next = position.play(cell);
+        mMoveCount.incrementAndGet();
+        int aiMove = GameAI.NO_MOVE;
+        if (!next.isGameOver())
+        {
+            aiMove = selectAIMove(next);
+            next = next.play(aiMove);
+            mMoveCount.incrementAndGet();
+        }
+
+        // The board is not locked during the search, another request for the game may have won
+        if (!mSessions.replace(id, position, next))
+        {
+            respond(exchange, 409, "error=conflict");
+            return;
+        }
+        if (next.isGameOver())
+            mSessions.remove(id);
+        respond(exchange, 200, describe(id, next, userMarker, aiMove));
+    }
+
+    /**
+     * Compute the AI's move with one of the shared engines, waiting for one to be free.
+     */
+    private int selectAIMove(Position position) throws InterruptedException
+    {
+        GameAI gameAI = mEngines.take();
+        try
+        {
+            return gameAI.selectMove(position);
+        }
+        finally
+        {
+            mEngines.add(gameAI);
+        }
+    }
+
+    /**
+     * Describe a game as key=value pairs. The board is a string of X, O and . for blank cells,
+     * row by row.
+     */
+    private static String describe(long id, Position position, Player userMarker, int aiMove)
+    {
+        StringBuilder board = new StringBuilder();
+        for (int cell = 0; cell < position.getGeometry().getCellCount(); cell++)
+        {
+            Player player = position.getPlayerAt(cell);
+            board.append((null == player) ? '.' : player.name().charAt(0));
+        }
+        return "id=" + id
+                + " status=" + getStatus(position, userMarker)
+                + " marker=" + userMarker
+                + " aiMove=" + aiMove
+                + " board=" + board;
+    }
+
+    /**
+     * Get the status of a game for the user: IN_PROGRESS or an Outcome.
+     */
+    private static String getStatus(Position position, Player userMarker)
+    {
+        if (position.hasWon(userMarker))
+            return Outcome.WIN.name();
+        if (position.hasWon((userMarker == Player.X) ? Player.O : Player.X))
+            return Outcome.LOSE.name();
+        if (position.isFull())
+            return Outcome.TIE.name();
+        return IN_PROGRESS;
+    }
+
+    /**
+     * Send a text/plain response and close the exchange.
+     */
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException
+    {
+        byte[] bytes = (body + "\n").getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream output = exchange.getResponseBody();
+        try
+        {
+            output.write(bytes);
+        }
+        finally
+        {
+            output.close();
+        }
+    }
+
+    /**
+     * Parse the key=value pairs of a query string.
+     */
+    private static Map<String, String> parseQuery(String query)
+    {
+        Map<String, String> values = new HashMap<>();
+        if (null == query)
+            return values;
+        for (String pair : query.split("&"))
+        {
+            int separator = pair.indexOf('=');
+            if (separator > 0)
+                values.put(pair.substring(0, separator), pair.substring(separator + 1));
+        }
+        return values;
+    }
+
+    /**
+     * Parse key=value arguments.
+     */
+    static Map<String, String> parseOptions(String[] args)
+    {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args)
+        {
+            int separator = arg.indexOf('=');
+            if (separator <= 0)
+                throw new IllegalArgumentException("Expected key=value: " + arg);
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * Get an option, or its default value.
+     */
+    static String get(Map<String, String> options, String key, String defaultValue)
+    {
+        return options.containsKey(key) ? options.get(key) : defaultValue;
+    }
+}
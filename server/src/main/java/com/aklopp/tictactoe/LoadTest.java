@@ -0,0 +1,256 @@
+package com.aklopp.tictactoe;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Plays games against a running GameServer from many simulated clients at once, and reports the
+ * moves per second, per server core and the latency percentiles of move requests.
+ * Moves and cores are taken from the server's /stats, so the AI's opening moves and the moves
+ * that end a game without a reply are counted as the server played them. Other clients of the
+ * server during the test are counted too.
+ * Each client runs on its own virtual thread, plays a random blank cell each turn and starts a
+ * new game when one ends, until the time is up.
+ * <p>
+ * Arguments are key=value pairs, all optional:
+ * <ul>
+ * <li>url - the server, default http://localhost:8080</li>
+ * <li>clients - number of clients at once, default 1000</li>
+ * <li>seconds - length of the test, default 10</li>
+ * <li>seed - seed of the clients' moves, default 1</li>
+ * </ul>
+ */
+public class LoadTest
+{
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException
+    {
+        Map<String, String> options = GameServer.parseOptions(args);
+        final String url = GameServer.get(options, "url", "http://localhost:8080");
+        int clientCount = Integer.parseInt(GameServer.get(options, "clients", "1000"));
+        final long durationNanos = Long.parseLong(GameServer.get(options, "seconds", "10")) * 1000000000L;
+        long seed = Long.parseLong(GameServer.get(options, "seed", "1"));
+
+        // Keep-alive connections are pooled per destination, let every client keep its own
+        System.setProperty("http.maxConnections", Integer.toString(clientCount));
+
+        Map<String, String> statsBefore = new Client(url, seed).request("GET", "/stats");
+        if (null == statsBefore)
+            throw new IllegalStateException("Could not get " + url + "/stats");
+
+        ExecutorService executor = GameServer.newRequestExecutor();
+        List<Future<Client>> results = new ArrayList<>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < clientCount; i++)
+        {
+            final Client client = new Client(url, seed * 31 + i);
+            results.add(executor.submit(new Callable<Client>()
+            {
+                @Override
+                public Client call() throws IOException
+                {
+                    client.play(start + durationNanos);
+                    return client;
+                }
+            }));
+        }
+
+        long gameCount = 0;
+        long errorCount = 0;
+        long latencyCount = 0;
+        List<Client> clients = new ArrayList<>();
+        for (Future<Client> result : results)
+        {
+            Client client = result.get();
+            clients.add(client);
+            gameCount += client.mGameCount;
+            errorCount += client.mErrorCount;
+            latencyCount += client.mLatencyCount;
+        }
+        executor.shutdown();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Map<String, String> statsAfter = new Client(url, seed).request("GET", "/stats");
+        if (null == statsAfter)
+            throw new IllegalStateException("Could not get " + url + "/stats");
+
+        long[] latencies = new long[(int) latencyCount];
+        int offset = 0;
+        for (Client client : clients)
+        {
+            System.arraycopy(client.mLatencies, 0, latencies, offset, client.mLatencyCount);
+            offset += client.mLatencyCount;
+        }
+        Arrays.sort(latencies);
+
+        long moveCount = Long.parseLong(statsAfter.get("moves")) - Long.parseLong(statsBefore.get("moves"));
+        int coreCount = Integer.parseInt(statsAfter.get("cores"));
+        System.out.println(String.format("%d clients, %.1f s: %d games, %d move requests, %d errors",
+                clientCount, seconds, gameCount, latencyCount, errorCount));
+        System.out.println(String.format("%d moves, %.0f moves/sec, %.0f moves/sec/core on %d server cores",
+                moveCount, moveCount / seconds, moveCount / seconds / coreCount, coreCount));
+        System.out.println(String.format("latency p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+                getPercentile(latencies, 50), getPercentile(latencies, 90),
+                getPercentile(latencies, 99), getPercentile(latencies, 100)));
+    }
+
+    /**
+     * Get a percentile of sorted latencies.
+     *
+     * @return latency in milliseconds
+     */
+    private static double getPercentile(long[] sortedNanos, int percentile)
+    {
+        if (sortedNanos.length == 0)
+            return 0;
+        int index = (int) Math.ceil(percentile / 100.0 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * One simulated player, not thread safe.
+     */
+    private static final class Client
+    {
+        /**
+         * Base URL of the server.
+         */
+        private final String mUrl;
+
+        /**
+         * Picks the markers and moves.
+         */
+        private final Random mRandom;
+
+        /**
+         * Latency of each move request, in nanoseconds.
+         */
+        private long[] mLatencies = new long[256];
+        private int mLatencyCount;
+
+        private long mGameCount;
+        private long mErrorCount;
+
+        Client(String url, long seed)
+        {
+            mUrl = url;
+            mRandom = new Random(seed);
+        }
+
+        /**
+         * Play games until the deadline.
+         *
+         * @param deadline System.nanoTime() to stop at
+         */
+        void play(long deadline) throws IOException
+        {
+            while (System.nanoTime() < deadline)
+            {
+                String marker = mRandom.nextBoolean() ? "X" : "O";
+                Map<String, String> game = request("POST", "/games?marker=" + marker);
+                if (null == game)
+                    continue;
+
+                String id = game.get("id");
+                while (GameServer.IN_PROGRESS.equals(game.get("status")) && System.nanoTime() < deadline)
+                {
+                    long requestStart = System.nanoTime();
+                    game = request("POST", "/games/" + id + "?cell=" + pickBlankCell(game.get("board")));
+                    if (null == game)
+                        break;
+                    record(System.nanoTime() - requestStart);
+                }
+
+                if (null != game && !GameServer.IN_PROGRESS.equals(game.get("status")))
+                    mGameCount++;
+                else
+                    request("DELETE", "/games/" + id);
+            }
+        }
+
+        /**
+         * Pick a random blank cell of a board string.
+         */
+        private int pickBlankCell(String board)
+        {
+            int blankCount = 0;
+            for (int i = 0; i < board.length(); i++)
+            {
+                if (board.charAt(i) == '.')
+                    blankCount++;
+            }
+
+            int pick = mRandom.nextInt(blankCount);
+            for (int i = 0; ; i++)
+            {
+                if (board.charAt(i) == '.' && pick-- == 0)
+                    return i;
+            }
+        }
+
+        /**
+         * Record the latency of a move request.
+         */
+        private void record(long nanos)
+        {
+            if (mLatencyCount == mLatencies.length)
+                mLatencies = Arrays.copyOf(mLatencies, 2 * mLatencies.length);
+            mLatencies[mLatencyCount++] = nanos;
+        }
+
+        /**
+         * Send a request and parse the key=value pairs of the response.
+         *
+         * @return the response, null if the request failed
+         */
+        private Map<String, String> request(String method, String path) throws IOException
+        {
+            HttpURLConnection connection = (HttpURLConnection) new URL(mUrl + path).openConnection();
+            connection.setRequestMethod(method);
+            int status = connection.getResponseCode();
+            InputStream input = (status < 400) ? connection.getInputStream() : connection.getErrorStream();
+
+            // Read the whole body so the connection can be reused
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            try
+            {
+                int length;
+                while (null != input && (length = input.read(buffer)) > 0)
+                    body.write(buffer, 0, length);
+            }
+            finally
+            {
+                if (null != input)
+                    input.close();
+            }
+
+            if (status != 200)
+            {
+                mErrorCount++;
+                return null;
+            }
+            Map<String, String> values = new HashMap<>();
+            for (String pair : new String(body.toByteArray(), UTF_8).trim().split(" "))
+            {
+                int separator = pair.indexOf('=');
+                values.put(pair.substring(0, separator), pair.substring(separator + 1));
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package com.aklopp.tictactoe;
+
+/**
+ * Fixed-capacity store of the game sessions of the server.
+ * Every session is a few longs in one flat array: the occupancy words of X, the occupancy words
+ * of O, and a metadata word holding the user's marker, the time the session was last used and a
+ * generation count. On the 3 x 3 board
+ * a session takes 24 bytes, so tens of thousands of sessions fit in a few megabytes and there is
+ * no object per session for the garbage collector to trace.
+ * <p>
+ * A session id is the generation in the upper 32 bits and the slot index in the lower 32 bits.
+ * The generation is bumped whenever a slot is freed, so a stale id never reaches the next game
+ * to use the slot.
+ * <p>
+ * Clients that leave without finishing or deleting their game would otherwise hold their slot
+ * forever. When the table is full, create reclaims the slots of sessions idle for longer than
+ * the idle timeout.
+ * <p>
+ * Slots are guarded by striped locks, so requests for different sessions rarely contend.
+ * The locks are only held to copy a board in or out, never while the AI searches.
+ */
+final class SessionTable
+{
+    /**
+     * Returned by create when every slot is in use, and by lookups of unknown ids.
+     */
+    static final long NO_SESSION = -1;
+
+    /**
+     * Number of locks the slots are spread over, a power of 2.
+     */
+    private static final int LOCK_STRIPES = 256;
+
+    /**
+     * Metadata bit set while the slot holds a session.
+     */
+    private static final long IN_USE = 1L;
+
+    /**
+     * Metadata bit set when the user plays O.
+     */
+    private static final long USER_IS_O = 1L << 1;
+
+    /**
+     * Position and mask of the time the session was last used in the metadata word, in seconds
+     * since the table was created.
+     */
+    private static final int TOUCHED_SHIFT = 2;
+    private static final long TOUCHED_MASK = (1L << 30) - 1;
+
+    /**
+     * Shift of the generation in the metadata word and in session ids.
+     */
+    private static final int GENERATION_SHIFT = 32;
+
+    /**
+     * Geometry of every session.
+     */
+    private final BoardGeometry mGeometry;
+
+    /**
+     * Longs per player's occupancy bitset.
+     */
+    private final int mWordCount;
+
+    /**
+     * Longs per session: X words, O words, metadata.
+     */
+    private final int mStride;
+
+    /**
+     * The sessions, mStride longs each.
+     */
+    private final long[] mSlots;
+
+    /**
+     * Locks guarding the slots, slot i is guarded by mLocks[i & (LOCK_STRIPES - 1)].
+     */
+    private final Object[] mLocks;
+
+    /**
+     * Stack of free slot indices, guarded by the table itself.
+     */
+    private final int[] mFreeSlots;
+    private int mFreeCount;
+
+    /**
+     * Seconds a session may go unused before create may reclaim its slot.
+     */
+    private final long mIdleTimeoutSeconds;
+
+    /**
+     * System.nanoTime() when the table was created, the origin of the times in the metadata.
+     */
+    private final long mStartNanos = System.nanoTime();
+
+    /**
+     * The time of the last search for idle sessions, guarded by the table itself. A full table
+     * is searched at most once a second.
+     */
+    private long mLastReclaimSeconds = -1;
+
+    /**
+     * Constructor
+     *
+     * @param geometry board of every session
+     * @param capacity           maximum number of sessions at once
+     * @param idleTimeoutSeconds seconds a session may go unused before its slot is reclaimed
+     */
+    SessionTable(BoardGeometry geometry, int capacity, long idleTimeoutSeconds)
+    {
+        mGeometry = geometry;
+        mWordCount = geometry.getWordCount();
+        mStride = 2 * mWordCount + 1;
+        mSlots = new long[capacity * mStride];
+
+        mLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+            mLocks[i] = new Object();
+
+        // Hand out low slots first
+        mFreeSlots = new int[capacity];
+        for (int i = 0; i < capacity; i++)
+            mFreeSlots[i] = capacity - 1 - i;
+        mFreeCount = capacity;
+        mIdleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    /**
+     * Getter for the geometry of every session.
+     *
+     * @return geometry
+     */
+    BoardGeometry getGeometry()
+    {
+        return mGeometry;
+    }
+
+    /**
+     * Start a session on an empty board.
+     *
+     * @param userMarker the marker of the user, the AI plays the other one
+     * @return the session id, NO_SESSION if the table is full of sessions in use
+     */
+    long create(Player userMarker)
+    {
+        int slot;
+        synchronized (this)
+        {
+            if (mFreeCount == 0)
+                reclaimIdleSlots();
+            if (mFreeCount == 0)
+                return NO_SESSION;
+            slot = mFreeSlots[--mFreeCount];
+        }
+
+        synchronized (getLock(slot))
+        {
+            int base = slot * mStride;
+            for (int i = 0; i < 2 * mWordCount; i++)
+                mSlots[base + i] = 0;
+
+            long generation = mSlots[base + 2 * mWordCount] >>> GENERATION_SHIFT;
+            mSlots[base + 2 * mWordCount] = (generation << GENERATION_SHIFT)
+                    | (getSeconds() << TOUCHED_SHIFT) | IN_USE | ((userMarker == Player.O) ? USER_IS_O : 0);
+            return (generation << GENERATION_SHIFT) | slot;
+        }
+    }
+
+    /**
+     * Get the board of a session.
+     *
+     * @param id
+     * @return the position, null if there is no such session
+     */
+    Position getPosition(long id)
+    {
+        int slot = getSlot(id);
+        if (slot < 0)
+            return null;
+
+        long[] xWords = new long[mWordCount];
+        long[] oWords = new long[mWordCount];
+        synchronized (getLock(slot))
+        {
+            int base = slot * mStride;
+            if (!isCurrent(id, base))
+                return null;
+            touch(base);
+            System.arraycopy(mSlots, base, xWords, 0, mWordCount);
+            System.arraycopy(mSlots, base + mWordCount, oWords, 0, mWordCount);
+        }
+        return new Position(mGeometry, xWords, oWords);
+    }
+
+    /**
+     * Get the marker of the user of a session.
+     *
+     * @param id
+     * @return the marker, null if there is no such session
+     */
+    Player getUserMarker(long id)
+    {
+        int slot = getSlot(id);
+        if (slot < 0)
+            return null;
+
+        synchronized (getLock(slot))
+        {
+            int base = slot * mStride;
+            if (!isCurrent(id, base))
+                return null;
+            return ((mSlots[base + 2 * mWordCount] & USER_IS_O) != 0) ? Player.O : Player.X;
+        }
+    }
+
+    /**
+     * Replace the board of a session, unless another request changed it first.
+     *
+     * @param id
+     * @param expected the board the new one was derived from
+     * @param position the new board
+     * @return true if the board was replaced, false if the session is gone or its board is no
+     * longer the expected one
+     */
+    boolean replace(long id, Position expected, Position position)
+    {
+        int slot = getSlot(id);
+        if (slot < 0)
+            return false;
+
+        synchronized (getLock(slot))
+        {
+            int base = slot * mStride;
+            if (!isCurrent(id, base) || !matches(base, expected))
+                return false;
+            touch(base);
+            for (int i = 0; i < mWordCount; i++)
+            {
+                mSlots[base + i] = position.getWord(Player.X, i);
+                mSlots[base + mWordCount + i] = position.getWord(Player.O, i);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * End a session and free its slot.
+     *
+     * @param id
+     * @return true if the session existed
+     */
+    boolean remove(long id)
+    {
+        int slot = getSlot(id);
+        if (slot < 0)
+            return false;
+
+        synchronized (getLock(slot))
+        {
+            int base = slot * mStride;
+            if (!isCurrent(id, base))
+                return false;
+            release(base);
+        }
+        synchronized (this)
+        {
+            mFreeSlots[mFreeCount++] = slot;
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of sessions in progress.
+     *
+     * @return session count
+     */
+    synchronized int getSessionCount()
+    {
+        return mFreeSlots.length - mFreeCount;
+    }
+
+    /**
+     * Free the slots of the sessions idle for longer than the idle timeout. Call with the table
+     * locked.
+     */
+    private void reclaimIdleSlots()
+    {
+        long now = getSeconds();
+        if (now == mLastReclaimSeconds)
+            return;
+        mLastReclaimSeconds = now;
+
+        for (int slot = 0; slot < mFreeSlots.length; slot++)
+        {
+            synchronized (getLock(slot))
+            {
+                int base = slot * mStride;
+                long metadata = mSlots[base + 2 * mWordCount];
+                if ((metadata & IN_USE) == 0
+                        || now - ((metadata >>> TOUCHED_SHIFT) & TOUCHED_MASK) < mIdleTimeoutSeconds)
+                    continue;
+                release(base);
+            }
+            mFreeSlots[mFreeCount++] = slot;
+        }
+    }
+
+    /**
+     * Mark the slot at base as free. The next session in the slot gets a new generation, so
+     * the id of the old one goes stale. Call with the slot's lock held.
+     */
+    private void release(int base)
+    {
+        long generation = (mSlots[base + 2 * mWordCount] >>> GENERATION_SHIFT) + 1;
+        mSlots[base + 2 * mWordCount] = (generation & Integer.MAX_VALUE) << GENERATION_SHIFT;
+    }
+
+    /**
+     * Record that the session in the slot at base was just used. Call with the slot's lock
+     * held.
+     */
+    private void touch(int base)
+    {
+        long metadata = mSlots[base + 2 * mWordCount] & ~(TOUCHED_MASK << TOUCHED_SHIFT);
+        mSlots[base + 2 * mWordCount] = metadata | (getSeconds() << TOUCHED_SHIFT);
+    }
+
+    /**
+     * Get the seconds since the table was created, as stored in the metadata.
+     */
+    private long getSeconds()
+    {
+        return ((System.nanoTime() - mStartNanos) / 1000000000L) & TOUCHED_MASK;
+    }
+
+    /**
+     * Get the slot index of a session id.
+     *
+     * @return the slot, -1 if the id is out of range
+     */
+    private int getSlot(long id)
+    {
+        long slot = id & 0xFFFFFFFFL;
+        return (id < 0 || slot >= mFreeSlots.length) ? -1 : (int) slot;
+    }
+
+    /**
+     * Get the lock guarding a slot.
+     */
+    private Object getLock(int slot)
+    {
+        return mLocks[slot & (LOCK_STRIPES - 1)];
+    }
+
+    /**
+     * Check that the slot at base holds the session with the given id. Call with the slot's
+     * lock held.
+     */
+    private boolean isCurrent(long id, int base)
+    {
+        long metadata = mSlots[base + 2 * mWordCount];
+        return (metadata & IN_USE) != 0 && (metadata >>> GENERATION_SHIFT) == (id >>> GENERATION_SHIFT);
+    }
+
+    /**
+     * Check that the slot at base holds the given board. Call with the slot's lock held.
+     */
+    private boolean matches(int base, Position position)
+    {
+        for (int i = 0; i < mWordCount; i++)
+        {
+            if (mSlots[base + i] != position.getWord(Player.X, i)
+                    || mSlots[base + mWordCount + i] != position.getWord(Player.O, i))
+                return false;
+        }
+        return true;
+    }
+}